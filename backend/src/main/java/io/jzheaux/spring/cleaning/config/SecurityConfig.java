@@ -1,8 +1,13 @@
 package io.jzheaux.spring.cleaning.config;
 
+import io.jzheaux.spring.cleaning.service.AdaptiveConcurrencyLimit;
+import io.jzheaux.spring.cleaning.service.ConcurrencyLimitFilter;
 import io.jzheaux.spring.cleaning.service.JwtAuthFilter;
 import io.jzheaux.spring.cleaning.service.JwtUtil;
 import io.jzheaux.spring.cleaning.service.MyUserDetailsService;
+import io.jzheaux.spring.cleaning.service.ServerTimingFilter;
+import io.jzheaux.spring.cleaning.service.TimedPasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -15,9 +20,11 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.session.DisableEncodeUrlFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import org.springframework.web.filter.CorsFilter;
 
 import java.util.List;
 
@@ -36,28 +43,66 @@ public class SecurityConfig {
         return new JwtAuthFilter(jwtUtil, userDetailsService);
     }
 
+    /**
+     * Provides the filter that sheds excess load with adaptive concurrency limits,
+     * kept separately for /auth/** and /api/** so that one can't starve the other.
+     *
+     * @param authInitialLimit Starting concurrency limit for /auth/**.
+     * @param authMaxLimit Highest concurrency limit for /auth/**.
+     * @param apiInitialLimit Starting concurrency limit for /api/**.
+     * @param apiMaxLimit Highest concurrency limit for /api/**.
+     * @return Configured {@link ConcurrencyLimitFilter} bean.
+     */
+    @Bean
+    public ConcurrencyLimitFilter concurrencyLimitFilter(@Value("${concurrency.auth.initial-limit:10}") int authInitialLimit,
+                                                         @Value("${concurrency.auth.max-limit:50}") int authMaxLimit,
+                                                         @Value("${concurrency.api.initial-limit:50}") int apiInitialLimit,
+                                                         @Value("${concurrency.api.max-limit:150}") int apiMaxLimit) {
+        return new ConcurrencyLimitFilter(
+                new AdaptiveConcurrencyLimit(authInitialLimit, 1, authMaxLimit),
+                new AdaptiveConcurrencyLimit(apiInitialLimit, 1, apiMaxLimit));
+    }
+
+    /**
+     * Provides the filter that reports per-request phase timings in the {@code Server-Timing} header.
+     *
+     * @param accessLog Whether to also expose the timings to the access log as the {@code serverTiming} request attribute.
+     * @return Configured {@link ServerTimingFilter} bean.
+     */
+    @Bean
+    public ServerTimingFilter serverTimingFilter(@Value("${server-timing.access-log:false}") boolean accessLog) {
+        return new ServerTimingFilter(accessLog);
+    }
+
     /**
      * Defines the application's security filter chain.
      * Configures:
+     * - Server-Timing measurement, applied before any other filter
      * - CORS handling
+     * - Adaptive concurrency limits, applied after CORS so that shed responses still carry CORS headers
      * - CSRF disabled
      * - Public access to /auth/**
      * - JWT-based stateless session management
      *
      * @param http Spring's security builder.
      * @param jwtAuthFilter The filter responsible for validating JWTs.
+     * @param concurrencyLimitFilter The filter responsible for shedding excess load.
+     * @param serverTimingFilter The filter responsible for the Server-Timing header.
      * @param corsSource The CORS configuration source.
      * @return A SecurityFilterChain defining access rules and filters.
      * @throws Exception if the security chain setup fails.
      */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtAuthFilter jwtAuthFilter, CorsConfigurationSource corsSource) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtAuthFilter jwtAuthFilter, ConcurrencyLimitFilter concurrencyLimitFilter,
+                                                   ServerTimingFilter serverTimingFilter, CorsConfigurationSource corsSource) throws Exception {
         http.cors(cors -> cors.configurationSource(corsSource))
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/auth/**").permitAll()
                         .anyRequest().authenticated())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .addFilterBefore(serverTimingFilter, DisableEncodeUrlFilter.class)
+                .addFilterAfter(concurrencyLimitFilter, CorsFilter.class)
                 .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
@@ -96,12 +141,13 @@ public class SecurityConfig {
     }
     /**
      * Provides the password encoder used to hash and verify passwords using BCrypt.
+     * Hashing is timed for the {@code Server-Timing} header.
      *
      * @return A BCryptPasswordEncoder instance.
      */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder());
     }
 
 }
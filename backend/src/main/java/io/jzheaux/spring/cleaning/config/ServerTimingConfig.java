@@ -0,0 +1,25 @@
+package io.jzheaux.spring.cleaning.config;
+
+import io.jzheaux.spring.cleaning.controller.ServerTimingAdvice;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class ServerTimingConfig implements WebMvcConfigurer {
+    private final ServerTimingAdvice serverTimingAdvice;
+
+    public ServerTimingConfig(ServerTimingAdvice serverTimingAdvice) {
+        this.serverTimingAdvice = serverTimingAdvice;
+    }
+
+    /**
+     * Registers the interceptor that times controller methods for the {@code Server-Timing} header.
+     *
+     * @param registry The registry of Spring MVC interceptors.
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this.serverTimingAdvice);
+    }
+}
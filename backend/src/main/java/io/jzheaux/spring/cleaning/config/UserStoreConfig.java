@@ -0,0 +1,28 @@
+package io.jzheaux.spring.cleaning.config;
+
+import io.jzheaux.spring.cleaning.service.CompactUserStore;
+import io.jzheaux.spring.cleaning.service.MapUserStore;
+import io.jzheaux.spring.cleaning.service.UserStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UserStoreConfig {
+    /**
+     * Provides the storage engine for user accounts, selected by the {@code users.storage} property.
+     * Use {@code map} (the default) for hash-map storage, or {@code compact} for packed storage
+     * suited to deployments with millions of users.
+     *
+     * @param storage The configured storage engine name.
+     * @return The {@link UserStore} used by the user service.
+     */
+    @Bean
+    public UserStore userStore(@Value("${users.storage:map}") String storage) {
+        return switch (storage) {
+            case "map" -> new MapUserStore();
+            case "compact" -> new CompactUserStore();
+            default -> throw new IllegalStateException("Unknown users.storage: " + storage);
+        };
+    }
+}
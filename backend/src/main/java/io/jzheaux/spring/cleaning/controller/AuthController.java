@@ -1,20 +1,29 @@
 // ==== AuthController.java ====
 package io.jzheaux.spring.cleaning.controller;
 
+import io.jsonwebtoken.JwtException;
 import io.jzheaux.spring.cleaning.dto.*;
+import io.jzheaux.spring.cleaning.exceptions.RefreshTokenException;
+import io.jzheaux.spring.cleaning.service.AuditEventType;
+import io.jzheaux.spring.cleaning.service.AuditLog;
 import io.jzheaux.spring.cleaning.service.JwtUtil;
 import io.jzheaux.spring.cleaning.service.RefreshTokenService;
+import io.jzheaux.spring.cleaning.service.SingleFlight;
+import io.jzheaux.spring.cleaning.service.TokenIntrospectionService;
 import io.jzheaux.spring.cleaning.service.UserService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -24,12 +33,18 @@ public class AuthController {
     private final JwtUtil jwt;
     private final UserService userService;
     private final RefreshTokenService rtService;
+    private final TokenIntrospectionService introspectionService;
+    private final AuditLog auditLog;
+    private final SingleFlight<String, Refreshed> refreshes = new SingleFlight<>();
 
-    public AuthController(AuthenticationManager authManager, JwtUtil jwt, UserService userService, RefreshTokenService rtService) {
+    public AuthController(AuthenticationManager authManager, JwtUtil jwt, UserService userService, RefreshTokenService rtService,
+                          TokenIntrospectionService introspectionService, AuditLog auditLog) {
         this.authManager = authManager;
         this.jwt = jwt;
         this.userService = userService;
         this.rtService = rtService;
+        this.introspectionService = introspectionService;
+        this.auditLog = auditLog;
     }
 
     /**
@@ -47,10 +62,12 @@ public class AuthController {
                     new UsernamePasswordAuthenticationToken(req.email(), req.password())
             );
         } catch (Exception ex) {
+            auditLog.record(AuditEventType.LOGIN_FAILURE, null, req.email());
             throw new BadCredentialsException("Incorrect email or password");
         }
 
         UserDTO user = userService.findByEmail(req.email());
+        auditLog.record(AuditEventType.LOGIN_SUCCESS, user.id(), user.email());
 
         String access  = jwt.generateToken(user, Duration.ofMinutes(15));
         String refresh = rtService.create(user.id(), req.rememberMe()); // add flag to AuthRequest
@@ -68,6 +85,7 @@ public class AuthController {
     public ResponseEntity<AuthTokenDTO> register(@RequestBody CreateUserRequest req) {
 
         UserDTO user = userService.createUser(req);
+        auditLog.record(AuditEventType.REGISTER, user.id(), user.email());
 
         String access  = jwt.generateToken(user, Duration.ofMinutes(15));
         String refresh = rtService.create(user.id(), false);
@@ -77,29 +95,67 @@ public class AuthController {
 
     /**
      * Refreshes the JWT access token using a valid refresh token.
+     * Concurrent requests with the same refresh token share one verification and one new access token.
      *
      * @param body The request containing a valid refresh token.
      * @return A response with a new access token. No new refresh token is issued.
      */
     @PostMapping("/refresh")
     public ResponseEntity<AuthTokenDTO> refresh(@RequestBody RefreshTokenDTO body) {
-        UUID userId = rtService.verifyAndGetUserId(body.refreshToken());
+        if (body.refreshToken() == null) {
+            throw new RefreshTokenException("invalid refresh token");
+        }
+        Refreshed refreshed = refreshes.execute(body.refreshToken(), () -> {
+            UUID userId = rtService.verifyAndGetUserId(body.refreshToken());
 
-        UserDTO user = userService.getUserById(userId);          // already exists in your service
-        String access = jwt.generateToken(user, Duration.ofMinutes(15));
+            UserDTO user = userService.getUserById(userId);          // already exists in your service
+            String access = jwt.generateToken(user, Duration.ofMinutes(15));
+            return new Refreshed(user, access);
+        });
+        auditLog.record(AuditEventType.REFRESH, refreshed.user().id(), refreshed.user().email());
 
-        return ResponseEntity.ok(new AuthTokenDTO(access, null)); // no new refresh token
+        return ResponseEntity.ok(new AuthTokenDTO(refreshed.accessToken(), null)); // no new refresh token
     }
 
     /**
-     * Logs the user out by invalidating the given refresh token.
+     * Logs the user out by invalidating the given refresh token and revoking the
+     * access token in the Authorization header, if any.
      *
      * @param body The request containing the refresh token to invalidate.
+     * @param authorization The Authorization header carrying the access token to revoke.
      * @return HTTP 200 OK response if successful.
      */
     @PostMapping("/logout")
-    public ResponseEntity<Void> logout(@RequestBody RefreshTokenDTO body) {
-        rtService.invalidate(body.refreshToken());
+    public ResponseEntity<Void> logout(@RequestBody RefreshTokenDTO body,
+                                       @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        RefreshTokenDTO invalidated = rtService.invalidate(body.refreshToken());
+        if (invalidated != null) {
+            auditLog.record(AuditEventType.LOGOUT, invalidated.userId(), null);
+        }
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            try {
+                jwt.revoke(authorization.substring(7));
+            } catch (JwtException | IllegalArgumentException ex) {
+                // an invalid or expired access token is already unusable
+            }
+        }
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Verifies a batch of access and refresh tokens in one round trip. Only for gateways,
+     * which authenticate with the client secret in the {@value TokenIntrospectionService#CLIENT_SECRET_HEADER} header.
+     *
+     * @param body The request containing the tokens to verify.
+     * @param clientSecret The gateway's client secret.
+     * @return One result per token, in request order, with its validity, subject, user ID and expiry.
+     */
+    @PostMapping("/introspect")
+    public ResponseEntity<List<TokenIntrospectionDTO>> introspect(@RequestBody IntrospectionRequest body,
+                                                                  @RequestHeader(value = TokenIntrospectionService.CLIENT_SECRET_HEADER, required = false) String clientSecret) {
+        return ResponseEntity.ok(introspectionService.introspect(clientSecret, body.tokens()));
+    }
+
+    private record Refreshed(UserDTO user, String accessToken) {
+    }
+}
@@ -0,0 +1,49 @@
+package io.jzheaux.spring.cleaning.controller;
+
+import io.jzheaux.spring.cleaning.service.ServerTiming;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Times controller methods as the {@link ServerTiming.Phase#CONTROLLER} phase and the writing of
+ * their response bodies as the {@link ServerTiming.Phase#WRITE} phase.
+ *
+ * The controller phase runs from when the handler is invoked until its body is about to be written;
+ * the write phase then runs until the body is flushed.
+ */
+@ControllerAdvice
+public class ServerTimingAdvice implements ResponseBodyAdvice<Object>, HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ServerTiming.enter(ServerTiming.Phase.CONTROLLER);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ServerTiming.exit(ServerTiming.Phase.WRITE);
+        ServerTiming.exit(ServerTiming.Phase.CONTROLLER);
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        ServerTiming.enter(ServerTiming.Phase.WRITE);
+        return body;
+    }
+}
@@ -2,11 +2,15 @@ package io.jzheaux.spring.cleaning.controller;
 
 import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
 import io.jzheaux.spring.cleaning.dto.UserDTO;
+import io.jzheaux.spring.cleaning.service.AuditEventType;
+import io.jzheaux.spring.cleaning.service.AuditLog;
 import io.jzheaux.spring.cleaning.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.Principal;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -17,14 +21,17 @@ import java.util.UUID;
 public class UserController {
 
     private final UserService userService;
+    private final AuditLog auditLog;
 
     /**
      * Constructs the controller with the required {@link UserService}.
      *
      * @param userService The service handling user-related operations.
+     * @param auditLog The audit trail that records user deletions.
      */
-    public UserController(UserService userService) {
+    public UserController(UserService userService, AuditLog auditLog) {
         this.userService = userService;
+        this.auditLog = auditLog;
     }
 
     /**
@@ -37,6 +44,23 @@ public class UserController {
         return userService.getAllUsers();
     }
 
+    /**
+     * Searches users by name prefix and age range.
+     *
+     * @param name   Case-insensitive name prefix; omit to match any name.
+     * @param minAge Inclusive lower age bound; omit for no lower bound.
+     * @param maxAge Inclusive upper age bound; omit for no upper bound.
+     * @param limit  Maximum number of users to return (default 50).
+     * @return A list of matching {@link UserDTO} objects.
+     */
+    @GetMapping("/search")
+    public List<UserDTO> searchUsers(@RequestParam(required = false) String name,
+                                     @RequestParam(required = false) Integer minAge,
+                                     @RequestParam(required = false) Integer maxAge,
+                                     @RequestParam(defaultValue = "50") int limit) {
+        return userService.searchUsers(name, minAge, maxAge, limit);
+    }
+
     /**
      * Creates a new user from the provided request data.
      *
@@ -64,11 +88,14 @@ public class UserController {
      * Deletes a user by their ID.
      *
      * @param id The ID of the user to delete.
-     * @return HTTP 204 No Content on success.
+     * @param principal The authenticated user performing the deletion.
+     * @return HTTP 204 No Content on success, including when there was no such user.
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteUserById(@PathVariable UUID id) {
-        userService.deleteUserById(id);
+    public ResponseEntity<Void> deleteUserById(@PathVariable UUID id, Principal principal) {
+        if (userService.deleteUserById(id)) {
+            auditLog.record(AuditEventType.USER_DELETE, id, principal.getName());
+        }
         return ResponseEntity.noContent().build();
     }
 }
@@ -0,0 +1,6 @@
+package io.jzheaux.spring.cleaning.dto;
+
+import java.util.List;
+
+public record IntrospectionRequest(List<String> tokens) {
+}
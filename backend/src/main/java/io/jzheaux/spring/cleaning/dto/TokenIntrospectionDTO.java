@@ -0,0 +1,10 @@
+package io.jzheaux.spring.cleaning.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record TokenIntrospectionDTO(boolean active, String tokenType, String sub, UUID userId, Instant exp) {
+    public static TokenIntrospectionDTO inactive() {
+        return new TokenIntrospectionDTO(false, null, null, null, null);
+    }
+}
@@ -0,0 +1,159 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Denylist of revoked access tokens, keyed by their {@code jti} claim.
+ *
+ * Revoked tokens are grouped into time buckets by their expiry. Each bucket puts a Bloom filter
+ * in front of an exact set, so checking a token that was never revoked, which is almost every
+ * request, costs a handful of bit probes in a single bucket and no map lookup. A bucket's slot is
+ * reused once every token in it has expired, which keeps memory bounded by the number of tokens
+ * revoked within one horizon.
+ */
+@Component
+public class AccessTokenDenylist {
+    private static final int BLOOM_BITS = 1 << 16;
+    private static final int BLOOM_HASHES = 3;
+
+    private final Clock clock;
+    private final long bucketMillis;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    // tokens expiring beyond the horizon, which don't fit in any bucket
+    private final Map<String, Instant> overflow = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs the denylist.
+     *
+     * @param bucketWidth The span of expiry times that share a bucket.
+     * @param horizon     The longest access-token lifetime expected; tokens expiring later go to an exact overflow map.
+     */
+    @Autowired
+    public AccessTokenDenylist(@Value("${jwt.denylist.bucket-width:PT1M}") Duration bucketWidth,
+                               @Value("${jwt.denylist.horizon:PT15M}") Duration horizon) {
+        this(bucketWidth, horizon, Clock.systemUTC());
+    }
+
+    /**
+     * Constructs the denylist with the clock that decides which tokens have expired.
+     *
+     * @param bucketWidth The span of expiry times that share a bucket.
+     * @param horizon     The longest access-token lifetime expected.
+     * @param clock       The current time.
+     */
+    AccessTokenDenylist(Duration bucketWidth, Duration horizon, Clock clock) {
+        this.clock = clock;
+        this.bucketMillis = bucketWidth.toMillis();
+        int count = (int) ((horizon.toMillis() + this.bucketMillis - 1) / this.bucketMillis) + 1;
+        this.buckets = new AtomicReferenceArray<>(count);
+    }
+
+    /**
+     * Revokes a token until it expires.
+     *
+     * @param tokenId   The token's {@code jti} claim.
+     * @param expiresAt The token's {@code exp} claim.
+     */
+    public void revoke(String tokenId, Instant expiresAt) {
+        long now = this.clock.millis();
+        if (tokenId == null || expiresAt.toEpochMilli() <= now) {
+            return;
+        }
+        long epoch = expiresAt.toEpochMilli() / this.bucketMillis;
+        if (epoch - now / this.bucketMillis >= this.buckets.length()) {
+            this.overflow.values().removeIf(expiry -> expiry.toEpochMilli() <= now);
+            this.overflow.put(tokenId, expiresAt);
+            return;
+        }
+        int slot = (int) Math.floorMod(epoch, (long) this.buckets.length());
+        Bucket bucket = this.buckets.get(slot);
+        // a bucket of an older epoch in this slot has only expired tokens, so it is replaced
+        while (bucket == null || bucket.epoch < epoch) {
+            Bucket fresh = new Bucket(epoch);
+            bucket = this.buckets.compareAndSet(slot, bucket, fresh) ? fresh : this.buckets.get(slot);
+        }
+        if (bucket.epoch > epoch) {
+            // another thread saw a later time, by which this token has expired
+            return;
+        }
+        bucket.add(tokenId);
+    }
+
+    /**
+     * Checks whether a token has been revoked.
+     *
+     * @param tokenId   The token's {@code jti} claim; tokens without one can't be revoked.
+     * @param expiresAt The token's {@code exp} claim.
+     * @return True if the token was revoked.
+     */
+    public boolean isRevoked(String tokenId, Instant expiresAt) {
+        if (tokenId == null) {
+            return false;
+        }
+        long epoch = expiresAt.toEpochMilli() / this.bucketMillis;
+        Bucket bucket = this.buckets.get((int) Math.floorMod(epoch, (long) this.buckets.length()));
+        if (bucket != null && bucket.epoch == epoch && bucket.contains(tokenId)) {
+            return true;
+        }
+        return !this.overflow.isEmpty() && this.overflow.containsKey(tokenId);
+    }
+
+    private static final class Bucket {
+        private final long epoch;
+        private final AtomicLongArray bits = new AtomicLongArray(BLOOM_BITS / Long.SIZE);
+        private final Set<String> tokenIds = ConcurrentHashMap.newKeySet();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+
+        void add(String tokenId) {
+            // the exact set is updated first so that a reader who sees the bits also finds the id
+            this.tokenIds.add(tokenId);
+            long hash = hash(tokenId);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bit(hash, i);
+                int word = bit >>> 6;
+                long mask = 1L << bit;
+                long current = this.bits.get(word);
+                while ((current & mask) == 0 && !this.bits.compareAndSet(word, current, current | mask)) {
+                    current = this.bits.get(word);
+                }
+            }
+        }
+
+        boolean contains(String tokenId) {
+            long hash = hash(tokenId);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bit(hash, i);
+                if ((this.bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return this.tokenIds.contains(tokenId);
+        }
+
+        private static long hash(String tokenId) {
+            long h = tokenId.hashCode() * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 29);
+        }
+
+        private static int bit(long hash, int i) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            return (h1 + i * h2) & (BLOOM_BITS - 1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.jzheaux.spring.cleaning.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts to observed latency, in the style of TCP Vegas.
+ *
+ * The limiter tracks the lowest round-trip time seen recently as the no-load latency. After each
+ * window of samples it estimates how many requests were queued rather than being served as
+ * {@code limit * (1 - minRtt / avgRtt)}; it raises the limit while that queue is short and lowers
+ * it once the queue grows, so the limit settles just above the point where latency starts to climb.
+ * The no-load latency is re-learned every few hundred windows, so the limit follows lasting
+ * changes in how long requests take.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final int PROBE_WINDOWS = 250;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // guarded by this
+    private double estimatedLimit;
+    private long minRtt = Long.MAX_VALUE;
+    private long previousMinRtt = Long.MAX_VALUE;
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private int windows;
+
+    /**
+     * Constructs the limit.
+     *
+     * @param initialLimit The limit to start from.
+     * @param minLimit     The lowest the limit can go.
+     * @param maxLimit     The highest the limit can go.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) this.estimatedLimit;
+    }
+
+    /**
+     * Admits a request if fewer than the current limit are in flight.
+     *
+     * @return True if the request was admitted, in which case {@link #release(long)} must be called when it completes.
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = this.inFlight.get();
+            if (current >= this.limit) {
+                return false;
+            }
+        } while (!this.inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Completes an admitted request and feeds its latency into the limit.
+     *
+     * @param rttNanos How long the request took.
+     */
+    public void release(long rttNanos) {
+        int inFlight = this.inFlight.getAndDecrement();
+        sample(rttNanos, inFlight);
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    private synchronized void sample(long rttNanos, int inFlight) {
+        this.minRtt = Math.min(this.minRtt, rttNanos);
+        this.windowRttSum += rttNanos;
+        this.windowSamples++;
+        this.windowMaxInFlight = Math.max(this.windowMaxInFlight, inFlight);
+        if (this.windowSamples < Math.max(MIN_WINDOW_SAMPLES, this.limit)) {
+            return;
+        }
+
+        // when far fewer requests than the limit are in flight, latency says nothing about the limit
+        if (this.windowMaxInFlight * 2 >= this.estimatedLimit) {
+            double avgRtt = (double) this.windowRttSum / this.windowSamples;
+            double baseRtt = Math.min(this.minRtt, this.previousMinRtt);
+            double queued = this.estimatedLimit * (1 - baseRtt / avgRtt);
+            double step = Math.max(1, Math.log10(this.estimatedLimit));
+            if (queued <= 3 * step) {
+                this.estimatedLimit += step;
+            } else if (queued >= 6 * step) {
+                this.estimatedLimit -= step;
+            }
+            this.estimatedLimit = Math.max(this.minLimit, Math.min(this.maxLimit, this.estimatedLimit));
+            this.limit = (int) this.estimatedLimit;
+        }
+
+        this.windowRttSum = 0;
+        this.windowSamples = 0;
+        this.windowMaxInFlight = 0;
+        if (++this.windows % PROBE_WINDOWS == 0) {
+            this.previousMinRtt = this.minRtt;
+            this.minRtt = Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package io.jzheaux.spring.cleaning.service;
+
+/**
+ * Kinds of authentication and account events recorded in the audit log
+ */
+public enum AuditEventType {
+    REGISTER,
+    LOGIN_SUCCESS,
+    LOGIN_FAILURE,
+    REFRESH,
+    LOGOUT,
+    USER_DELETE
+}
@@ -0,0 +1,221 @@
+package io.jzheaux.spring.cleaning.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit trail of authentication and account events.
+ *
+ * Request threads publish events into a preallocated {@link AuditRingBuffer} without locking or
+ * allocating. A single writer thread drains the buffer in batches and appends them as NDJSON to
+ * {@code audit.ndjson} in the configured directory using {@link FileChannel} writes. When that file
+ * would grow past the configured size it is renamed with a timestamp suffix and a new one is started,
+ * including when a file left over from an earlier run is already that large.
+ *
+ * When the buffer is full, events are either dropped and counted, or the publishing thread waits
+ * for room, depending on the configured {@link OverflowPolicy}.
+ */
+@Component
+public class AuditLog {
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final String ACTIVE_FILE = "audit.ndjson";
+    private static final int BATCH_EVENTS = 1024;
+    private static final int BATCH_BYTES = 1 << 20;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    /**
+     * What to do with an event when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the event and count it as dropped. */
+        DROP,
+        /** Make the publishing thread wait until the writer frees a slot. */
+        BLOCK
+    }
+
+    private final boolean enabled;
+    private final OverflowPolicy overflowPolicy;
+    private final Path directory;
+    private final long maxFileBytes;
+    private final AuditRingBuffer buffer;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+
+    private volatile boolean running;
+    private FileChannel channel;
+    private long fileBytes;
+    private int rotations;
+    private long reportedDrops;
+
+    /**
+     * Constructs the audit log. Its writer thread starts with {@link #start()}.
+     *
+     * @param enabled        Whether events are recorded at all.
+     * @param directory      Directory holding the active and rotated audit files.
+     * @param bufferSize     Number of events the ring buffer holds, rounded up to a power of two.
+     * @param maxFileSize    Size at which the active file is rotated.
+     * @param overflowPolicy What to do with events when the buffer is full.
+     */
+    public AuditLog(@Value("${audit.enabled:true}") boolean enabled,
+                    @Value("${audit.directory:logs/audit}") Path directory,
+                    @Value("${audit.buffer-size:8192}") int bufferSize,
+                    @Value("${audit.max-file-size:64MB}") DataSize maxFileSize,
+                    @Value("${audit.overflow:DROP}") OverflowPolicy overflowPolicy) {
+        this.enabled = enabled;
+        this.overflowPolicy = overflowPolicy;
+        this.directory = directory;
+        this.maxFileBytes = maxFileSize.toBytes();
+        this.buffer = new AuditRingBuffer(enabled ? bufferSize : 2);
+        this.writer = new Thread(this::run, "audit-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts the writer thread, if the audit log is enabled.
+     */
+    @PostConstruct
+    public void start() {
+        if (this.enabled && !this.running) {
+            this.running = true;
+            this.writer.start();
+        }
+    }
+
+    /**
+     * Records an event. Returns as soon as the event is in the buffer; it reaches the file asynchronously.
+     *
+     * @param type    The kind of event.
+     * @param userId  The affected user's ID, if known.
+     * @param subject The email of the account involved or acting, if known; truncated to 128 UTF-8 bytes.
+     */
+    public void record(AuditEventType type, UUID userId, String subject) {
+        if (!this.enabled) {
+            return;
+        }
+        long sequence = this.buffer.tryClaim();
+        while (sequence < 0) {
+            if (this.overflowPolicy == OverflowPolicy.DROP || !this.running) {
+                this.dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+            sequence = this.buffer.tryClaim();
+        }
+        this.buffer.publish(sequence, System.currentTimeMillis(), type, userId, subject);
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     */
+    public long droppedEvents() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Stops the writer thread after it has written every event already in the buffer.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        LockSupport.unpark(this.writer);
+        this.writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void run() {
+        ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+        while (this.running || this.buffer.hasPending()) {
+            int drained = this.buffer.drain(batch, BATCH_EVENTS);
+            if (drained == 0) {
+                write(batch);
+                reportDrops();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else if (batch.remaining() < AuditRingBuffer.MAX_RECORD_BYTES) {
+                write(batch);
+            }
+        }
+        write(batch);
+        reportDrops();
+        closeFile();
+    }
+
+    private void write(ByteBuffer batch) {
+        batch.flip();
+        try {
+            if (batch.hasRemaining()) {
+                if (this.channel == null) {
+                    open();
+                }
+                if (this.fileBytes > 0 && this.fileBytes + batch.remaining() > this.maxFileBytes) {
+                    rotate();
+                }
+                while (batch.hasRemaining()) {
+                    this.fileBytes += this.channel.write(batch);
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Failed to write audit events to {}", this.directory, ex);
+            closeFile();
+        } finally {
+            batch.clear();
+        }
+    }
+
+    // appends to the active file, which may be left over from an earlier run
+    private void open() throws IOException {
+        Files.createDirectories(this.directory);
+        this.channel = FileChannel.open(this.directory.resolve(ACTIVE_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.fileBytes = this.channel.size();
+    }
+
+    private void rotate() throws IOException {
+        this.channel.force(false);
+        this.channel.close();
+        this.channel = null;
+        String rotated = "audit-" + System.currentTimeMillis() + "-" + (++this.rotations) + ".ndjson";
+        Files.move(this.directory.resolve(ACTIVE_FILE), this.directory.resolve(rotated));
+        open();
+    }
+
+    private void closeFile() {
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            this.channel.force(false);
+            this.channel.close();
+        } catch (IOException ex) {
+            log.error("Failed to close audit file in {}", this.directory, ex);
+        }
+        this.channel = null;
+    }
+
+    private void reportDrops() {
+        long drops = this.dropped.sum();
+        if (drops > this.reportedDrops) {
+            log.warn("Dropped {} audit events because the buffer was full", drops - this.reportedDrops);
+            this.reportedDrops = drops;
+        }
+    }
+}
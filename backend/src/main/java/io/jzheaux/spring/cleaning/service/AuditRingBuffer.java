@@ -0,0 +1,252 @@
+package io.jzheaux.spring.cleaning.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated, lock-free ring buffer of fixed-size audit events, with many publishers and a single consumer.
+ *
+ * Events are stored field by field in parallel arrays, so publishing copies primitives and
+ * subject bytes into an existing slot and allocates nothing. A publisher claims a sequence
+ * number with a CAS, fills the slot, then marks the slot published with that sequence, even if
+ * filling it failed, so that the consumer never waits on it; the consumer reads slots in
+ * sequence order and encodes each one that was filled as an NDJSON line.
+ */
+final class AuditRingBuffer {
+    static final int SUBJECT_BYTES = 128;
+    static final int MAX_RECORD_BYTES = 1024;
+
+    private static final AuditEventType[] TYPES = AuditEventType.values();
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte UNFILLED = -1;
+
+    static {
+        for (AuditEventType type : TYPES) {
+            TYPE_NAMES[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final int mask;
+    private final long[] timestamps;
+    private final byte[] types;
+    private final boolean[] hasUserId;
+    private final long[] userIdMsbs;
+    private final long[] userIdLsbs;
+    private final int[] subjectLengths;
+    private final byte[] subjects;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    // consumer-only scratch space for formatting numbers
+    private final byte[] digits = new byte[20];
+
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.types = new byte[size];
+        this.hasUserId = new boolean[size];
+        this.userIdMsbs = new long[size];
+        this.userIdLsbs = new long[size];
+        this.subjectLengths = new int[size];
+        this.subjects = new byte[size * SUBJECT_BYTES];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.published.set(i, -1);
+        }
+    }
+
+    int capacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Claims the next slot.
+     *
+     * @return The claimed sequence number, or -1 if the buffer is full.
+     */
+    long tryClaim() {
+        long sequence;
+        do {
+            sequence = this.claimed.get();
+            if (sequence - this.consumed.get() > this.mask) {
+                return -1;
+            }
+        } while (!this.claimed.compareAndSet(sequence, sequence + 1));
+        return sequence;
+    }
+
+    /**
+     * Fills a claimed slot and makes it visible to the consumer.
+     */
+    void publish(long sequence, long timestamp, AuditEventType type, UUID userId, String subject) {
+        int slot = (int) (sequence & this.mask);
+        this.types[slot] = UNFILLED;
+        try {
+            this.timestamps[slot] = timestamp;
+            this.hasUserId[slot] = userId != null;
+            if (userId != null) {
+                this.userIdMsbs[slot] = userId.getMostSignificantBits();
+                this.userIdLsbs[slot] = userId.getLeastSignificantBits();
+            }
+            this.subjectLengths[slot] = (subject == null) ? -1 : encodeSubject(subject, slot * SUBJECT_BYTES);
+            this.types[slot] = (byte) type.ordinal();
+        } finally {
+            this.published.set(slot, sequence);
+        }
+    }
+
+    boolean hasPending() {
+        return this.claimed.get() != this.consumed.get();
+    }
+
+    /**
+     * Encodes published events into the given buffer, in sequence order, as NDJSON lines.
+     *
+     * @param out The buffer to write to; draining stops when it has less than {@link #MAX_RECORD_BYTES} left.
+     * @param max The maximum number of events to drain.
+     * @return The number of events drained.
+     */
+    int drain(ByteBuffer out, int max) {
+        long next = this.consumed.get();
+        int count = 0;
+        while (count < max && out.remaining() >= MAX_RECORD_BYTES) {
+            int slot = (int) (next & this.mask);
+            if (this.published.get(slot) != next) {
+                break;
+            }
+            if (this.types[slot] != UNFILLED) {
+                encode(slot, out);
+            }
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            this.consumed.set(next);
+        }
+        return count;
+    }
+
+    // UTF-8 encodes as much of the subject as fits, without allocating
+    private int encodeSubject(String subject, int offset) {
+        int position = offset;
+        int end = offset + SUBJECT_BYTES;
+        for (int i = 0; i < subject.length(); i++) {
+            char c = subject.charAt(i);
+            if (c < 0x80) {
+                if (position + 1 > end) {
+                    break;
+                }
+                this.subjects[position++] = (byte) c;
+            } else if (c < 0x800) {
+                if (position + 2 > end) {
+                    break;
+                }
+                this.subjects[position++] = (byte) (0xC0 | c >> 6);
+                this.subjects[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < subject.length()
+                    && Character.isLowSurrogate(subject.charAt(i + 1))) {
+                if (position + 4 > end) {
+                    break;
+                }
+                int codePoint = Character.toCodePoint(c, subject.charAt(++i));
+                this.subjects[position++] = (byte) (0xF0 | codePoint >> 18);
+                this.subjects[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                this.subjects[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                this.subjects[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (position + 1 > end) {
+                    break;
+                }
+                this.subjects[position++] = '?';
+            } else {
+                if (position + 3 > end) {
+                    break;
+                }
+                this.subjects[position++] = (byte) (0xE0 | c >> 12);
+                this.subjects[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                this.subjects[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return position - offset;
+    }
+
+    private void encode(int slot, ByteBuffer out) {
+        putAscii(out, "{\"timestamp\":");
+        putLong(out, this.timestamps[slot]);
+        putAscii(out, ",\"type\":\"");
+        out.put(TYPE_NAMES[this.types[slot]]);
+        out.put((byte) '"');
+        if (this.hasUserId[slot]) {
+            putAscii(out, ",\"userId\":\"");
+            putUuid(out, this.userIdMsbs[slot], this.userIdLsbs[slot]);
+            out.put((byte) '"');
+        }
+        int length = this.subjectLengths[slot];
+        if (length >= 0) {
+            putAscii(out, ",\"subject\":\"");
+            int offset = slot * SUBJECT_BYTES;
+            for (int i = offset; i < offset + length; i++) {
+                putEscaped(out, this.subjects[i]);
+            }
+            out.put((byte) '"');
+        }
+        putAscii(out, "}\n");
+    }
+
+    private static void putAscii(ByteBuffer out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.put((byte) value.charAt(i));
+        }
+    }
+
+    private void putLong(ByteBuffer out, long value) {
+        if (value < 0) {
+            out.put((byte) '-');
+            value = -value;
+        }
+        int position = this.digits.length;
+        do {
+            this.digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        out.put(this.digits, position, this.digits.length - position);
+    }
+
+    private static void putUuid(ByteBuffer out, long msb, long lsb) {
+        putHex(out, msb >>> 32, 8);
+        out.put((byte) '-');
+        putHex(out, msb >>> 16, 4);
+        out.put((byte) '-');
+        putHex(out, msb, 4);
+        out.put((byte) '-');
+        putHex(out, lsb >>> 48, 4);
+        out.put((byte) '-');
+        putHex(out, lsb, 12);
+    }
+
+    private static void putHex(ByteBuffer out, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.put(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    private static void putEscaped(ByteBuffer out, byte b) {
+        if (b == '"' || b == '\\') {
+            out.put((byte) '\\');
+            out.put(b);
+        } else if (b >= 0 && b < 0x20) {
+            putAscii(out, "\\u00");
+            out.put(HEX[b >>> 4]);
+            out.put(HEX[b & 0xF]);
+        } else {
+            out.put(b);
+        }
+    }
+}
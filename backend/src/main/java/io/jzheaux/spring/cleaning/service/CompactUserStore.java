@@ -0,0 +1,479 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Memory-compact {@link UserStore} for deployments with millions of users.
+ *
+ * IDs are held as two primitive longs in an open-addressing table, and each user's
+ * age, name, email and password hash are packed as UTF-8 into large shared byte pages.
+ * A second open-addressing table maps email hashes to slots of the first one, so lookups
+ * by email don't scan. {@link UserDTO} instances are only created when a user is read.
+ *
+ * Removed and replaced records leave garbage in the pages, which is reclaimed by copying
+ * live records into fresh pages once it outweighs the live data.
+ *
+ * Writes are serialized by a {@link StampedLock}. Reads don't take it: they run optimistically
+ * and are retried under the read lock only if a write overlapped them. Bytes in a page are never
+ * overwritten once written, so {@link #values()} only copies the tables under the read lock and
+ * materializes the users after releasing it.
+ */
+public class CompactUserStore implements UserStore {
+
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 2047;
+
+    private static final int MAX_FIELD_BYTES = 0xFFFE;
+    private static final int NULL_FIELD = 0xFFFF;
+
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    // id table: slot -> (msb, lsb, record address + 1)
+    private long[] msbs;
+    private long[] lsbs;
+    private int[] records;
+
+    // email table: slot -> (email hash, id table slot + 1)
+    private int[] emailHashes;
+    private int[] emailSlots;
+
+    private int size;
+    private int tombstones;
+    private int emailTombstones;
+
+    private byte[][] pages = new byte[16][];
+    private int pageCount;
+    private int writeOffset;
+    private long liveBytes;
+    private long garbageBytes;
+
+    private final StampedLock lock = new StampedLock();
+
+    public CompactUserStore() {
+        allocateTables(MIN_CAPACITY);
+    }
+
+    @Override
+    public UserDTO get(UUID id) {
+        return readOptimistically(() -> {
+            int slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            return slot < 0 ? null : read(slot);
+        });
+    }
+
+    @Override
+    public UserDTO findByEmail(String email) {
+        byte[] bytes = encode(email);
+        if (bytes == null) {
+            return null;
+        }
+        int hash = hash(bytes, 0, bytes.length);
+        return readOptimistically(() -> {
+            int[] emailSlots = this.emailSlots;
+            int mask = emailSlots.length - 1;
+            for (int i = hash & mask, probes = 0; emailSlots[i] != EMPTY && probes <= mask; i = (i + 1) & mask, probes++) {
+                int slot = emailSlots[i] - 1;
+                if (slot >= 0 && this.emailHashes[i] == hash && emailEquals(slot, bytes)) {
+                    return read(slot);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void save(UserDTO user) {
+        byte[] name = encode(user.name());
+        byte[] email = encode(user.email());
+        byte[] password = encode(user.password());
+        long stamp = this.lock.writeLock();
+        try {
+            doSave(user, name, email, password);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    private void doSave(UserDTO user, byte[] name, byte[] email, byte[] password) {
+        ensureCapacity();
+
+        long msb = user.id().getMostSignificantBits();
+        long lsb = user.id().getLeastSignificantBits();
+        int slot = findSlot(msb, lsb);
+        if (slot >= 0) {
+            removeEmail(slot);
+            release(this.records[slot] - 1);
+        } else {
+            slot = insertionSlot(msb, lsb);
+            if (this.records[slot] == DELETED) {
+                this.tombstones--;
+            }
+            this.msbs[slot] = msb;
+            this.lsbs[slot] = lsb;
+            this.size++;
+        }
+        this.records[slot] = write(user.age(), name, email, password) + 1;
+        if (email != null) {
+            insertEmail(slot, hash(email, 0, email.length));
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public UserDTO remove(UUID id) {
+        long stamp = this.lock.writeLock();
+        try {
+            return doRemove(id);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    private UserDTO doRemove(UUID id) {
+        int slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot < 0) {
+            return null;
+        }
+        UserDTO user = read(slot);
+        removeEmail(slot);
+        release(this.records[slot] - 1);
+        this.records[slot] = DELETED;
+        this.tombstones++;
+        this.size--;
+        maybeCompact();
+        return user;
+    }
+
+    @Override
+    public int size() {
+        return readOptimistically(() -> this.size);
+    }
+
+    /**
+     * Returns a copy of all stored users. Only the tables are copied under the read lock;
+     * the users are materialized from the packed records after it is released.
+     */
+    @Override
+    public Collection<UserDTO> values() {
+        long[] msbs;
+        long[] lsbs;
+        int[] records;
+        byte[][] pages;
+        long stamp = this.lock.readLock();
+        try {
+            msbs = this.msbs.clone();
+            lsbs = this.lsbs.clone();
+            records = this.records.clone();
+            pages = this.pages.clone();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+        List<UserDTO> users = new ArrayList<>();
+        for (int slot = 0; slot < records.length; slot++) {
+            if (records[slot] > 0) {
+                users.add(read(msbs[slot], lsbs[slot], records[slot] - 1, pages));
+            }
+        }
+        return users;
+    }
+
+    // runs a read without locking, and again under the read lock if a write overlapped it;
+    // a read that overlaps a write may see torn tables and fail, and its result is discarded
+    private <T> T readOptimistically(Supplier<T> read) {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = read.get();
+                if (this.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException ex) {
+                if (this.lock.validate(stamp)) {
+                    throw ex;
+                }
+            }
+        }
+        stamp = this.lock.readLock();
+        try {
+            return read.get();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /* ---------- id table ---------- */
+
+    // bounded by the table size so that an optimistic read can't spin on a table being rewritten
+    private int findSlot(long msb, long lsb) {
+        int[] records = this.records;
+        int mask = records.length - 1;
+        for (int i = hash(msb, lsb) & mask, probes = 0; records[i] != EMPTY && probes <= mask; i = (i + 1) & mask, probes++) {
+            if (records[i] > 0 && this.msbs[i] == msb && this.lsbs[i] == lsb) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int insertionSlot(long msb, long lsb) {
+        int mask = this.records.length - 1;
+        int i = hash(msb, lsb) & mask;
+        while (this.records[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void ensureCapacity() {
+        int capacity = this.records.length;
+        int threshold = capacity - (capacity >>> 2);
+        if (this.size + this.tombstones < threshold && this.size + this.emailTombstones < threshold) {
+            return;
+        }
+        int needed = Math.max(MIN_CAPACITY, (this.size + 1) * 2);
+        rebuild(Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    private void allocateTables(int capacity) {
+        this.msbs = new long[capacity];
+        this.lsbs = new long[capacity];
+        this.records = new int[capacity];
+        this.emailHashes = new int[capacity];
+        this.emailSlots = new int[capacity];
+        this.tombstones = 0;
+        this.emailTombstones = 0;
+    }
+
+    private void rebuild(int capacity) {
+        long[] oldMsbs = this.msbs;
+        long[] oldLsbs = this.lsbs;
+        int[] oldRecords = this.records;
+        allocateTables(capacity);
+        for (int i = 0; i < oldRecords.length; i++) {
+            if (oldRecords[i] > 0) {
+                int slot = insertionSlot(oldMsbs[i], oldLsbs[i]);
+                this.msbs[slot] = oldMsbs[i];
+                this.lsbs[slot] = oldLsbs[i];
+                this.records[slot] = oldRecords[i];
+            }
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (this.records[slot] > 0) {
+                int address = this.records[slot] - 1;
+                byte[] page = this.pages[address >>> PAGE_BITS];
+                int offset = emailOffset(page, address & PAGE_MASK);
+                int length = fieldLength(page, offset);
+                if (length != NULL_FIELD) {
+                    insertEmail(slot, hash(page, offset + 2, length));
+                }
+            }
+        }
+    }
+
+    /* ---------- email table ---------- */
+
+    private void insertEmail(int slot, int hash) {
+        int mask = this.emailSlots.length - 1;
+        int i = hash & mask;
+        while (this.emailSlots[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        if (this.emailSlots[i] == DELETED) {
+            this.emailTombstones--;
+        }
+        this.emailHashes[i] = hash;
+        this.emailSlots[i] = slot + 1;
+    }
+
+    private void removeEmail(int slot) {
+        int address = this.records[slot] - 1;
+        byte[] page = this.pages[address >>> PAGE_BITS];
+        int offset = emailOffset(page, address & PAGE_MASK);
+        int length = fieldLength(page, offset);
+        if (length == NULL_FIELD) {
+            return;
+        }
+        int hash = hash(page, offset + 2, length);
+        int mask = this.emailSlots.length - 1;
+        for (int i = hash & mask; this.emailSlots[i] != EMPTY; i = (i + 1) & mask) {
+            if (this.emailSlots[i] == slot + 1) {
+                this.emailSlots[i] = DELETED;
+                this.emailTombstones++;
+                return;
+            }
+        }
+    }
+
+    private boolean emailEquals(int slot, byte[] email) {
+        int address = this.records[slot] - 1;
+        byte[] page = this.pages[address >>> PAGE_BITS];
+        int offset = emailOffset(page, address & PAGE_MASK);
+        int length = fieldLength(page, offset);
+        return length == email.length
+                && Arrays.equals(page, offset + 2, offset + 2 + length, email, 0, length);
+    }
+
+    /* ---------- record pages ---------- */
+
+    // record layout: age (4 bytes), then name, email and password, each as a 2-byte length and UTF-8 bytes
+
+    private int write(int age, byte[] name, byte[] email, byte[] password) {
+        int length = 4 + fieldSize(name) + fieldSize(email) + fieldSize(password);
+        int address = allocate(length);
+        byte[] page = this.pages[address >>> PAGE_BITS];
+        int offset = address & PAGE_MASK;
+        page[offset] = (byte) (age >>> 24);
+        page[offset + 1] = (byte) (age >>> 16);
+        page[offset + 2] = (byte) (age >>> 8);
+        page[offset + 3] = (byte) age;
+        offset = writeField(page, offset + 4, name);
+        offset = writeField(page, offset, email);
+        writeField(page, offset, password);
+        return address;
+    }
+
+    private UserDTO read(int slot) {
+        return read(this.msbs[slot], this.lsbs[slot], this.records[slot] - 1, this.pages);
+    }
+
+    private static UserDTO read(long msb, long lsb, int address, byte[][] pages) {
+        byte[] page = pages[address >>> PAGE_BITS];
+        int offset = address & PAGE_MASK;
+        int age = (page[offset] & 0xFF) << 24 | (page[offset + 1] & 0xFF) << 16
+                | (page[offset + 2] & 0xFF) << 8 | (page[offset + 3] & 0xFF);
+        offset += 4;
+        String name = readField(page, offset);
+        offset = nextField(page, offset);
+        String email = readField(page, offset);
+        offset = nextField(page, offset);
+        String password = readField(page, offset);
+        return new UserDTO(new UUID(msb, lsb), name, password, email, age);
+    }
+
+    private int allocate(int length) {
+        if (this.pageCount == 0 || this.writeOffset + length > PAGE_SIZE) {
+            if (this.pageCount == MAX_PAGES) {
+                throw new IllegalStateException("user store is full");
+            }
+            if (this.pageCount == this.pages.length) {
+                this.pages = Arrays.copyOf(this.pages, Math.min(MAX_PAGES, this.pages.length * 2));
+            }
+            this.pages[this.pageCount++] = new byte[PAGE_SIZE];
+            this.writeOffset = 0;
+        }
+        int address = (this.pageCount - 1) << PAGE_BITS | this.writeOffset;
+        this.writeOffset += length;
+        this.liveBytes += length;
+        return address;
+    }
+
+    private void release(int address) {
+        int length = recordLength(this.pages[address >>> PAGE_BITS], address & PAGE_MASK);
+        this.liveBytes -= length;
+        this.garbageBytes += length;
+    }
+
+    private void maybeCompact() {
+        if (this.garbageBytes < PAGE_SIZE || this.garbageBytes < this.liveBytes) {
+            return;
+        }
+        byte[][] oldPages = this.pages;
+        this.pages = new byte[16][];
+        this.pageCount = 0;
+        this.liveBytes = 0;
+        this.garbageBytes = 0;
+        for (int slot = 0; slot < this.records.length; slot++) {
+            if (this.records[slot] > 0) {
+                int from = this.records[slot] - 1;
+                byte[] oldPage = oldPages[from >>> PAGE_BITS];
+                int length = recordLength(oldPage, from & PAGE_MASK);
+                int to = allocate(length);
+                System.arraycopy(oldPage, from & PAGE_MASK, this.pages[to >>> PAGE_BITS], to & PAGE_MASK, length);
+                this.records[slot] = to + 1;
+            }
+        }
+    }
+
+    private static int recordLength(byte[] page, int offset) {
+        int end = nextField(page, nextField(page, nextField(page, offset + 4)));
+        return end - offset;
+    }
+
+    private static int emailOffset(byte[] page, int offset) {
+        return nextField(page, offset + 4);
+    }
+
+    private static int fieldLength(byte[] page, int offset) {
+        return (page[offset] & 0xFF) << 8 | (page[offset + 1] & 0xFF);
+    }
+
+    private static int nextField(byte[] page, int offset) {
+        int length = fieldLength(page, offset);
+        return offset + 2 + (length == NULL_FIELD ? 0 : length);
+    }
+
+    private static String readField(byte[] page, int offset) {
+        int length = fieldLength(page, offset);
+        return length == NULL_FIELD ? null : new String(page, offset + 2, length, StandardCharsets.UTF_8);
+    }
+
+    private static int writeField(byte[] page, int offset, byte[] value) {
+        int length = value == null ? NULL_FIELD : value.length;
+        page[offset] = (byte) (length >>> 8);
+        page[offset + 1] = (byte) length;
+        if (value == null) {
+            return offset + 2;
+        }
+        System.arraycopy(value, 0, page, offset + 2, value.length);
+        return offset + 2 + value.length;
+    }
+
+    private static int fieldSize(byte[] value) {
+        return 2 + (value == null ? 0 : value.length);
+    }
+
+    private static byte[] encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("user field exceeds " + MAX_FIELD_BYTES + " bytes");
+        }
+        return bytes;
+    }
+
+    /* ---------- hashing ---------- */
+
+    private static int hash(long msb, long lsb) {
+        return mix(msb * 0x9E3779B97F4A7C15L ^ lsb);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ bytes[i]) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static int mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,84 @@
+package io.jzheaux.spring.cleaning.service;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Filter that sheds load with separate {@link AdaptiveConcurrencyLimit}s for authentication and API routes.
+ *
+ * Requests under {@code /auth/} and {@code /api/} each count against their own limit, so BCrypt-heavy
+ * logins can't take up the threads that API calls need. A request over its limit is rejected
+ * immediately with 503 Service Unavailable instead of waiting in a queue. Other paths aren't limited.
+ *
+ * Register this filter after the CORS filter, so that a browser can read the 503 of a cross-origin request.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final byte[] OVERLOADED = "{\"message\":\"Server is busy. Please try again later.\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final AdaptiveConcurrencyLimit authLimit;
+    private final AdaptiveConcurrencyLimit apiLimit;
+
+    /**
+     * Constructs the filter.
+     *
+     * @param authLimit The limit for requests under {@code /auth/}.
+     * @param apiLimit  The limit for requests under {@code /api/}.
+     */
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimit authLimit, AdaptiveConcurrencyLimit apiLimit) {
+        this.authLimit = authLimit;
+        this.apiLimit = apiLimit;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+
+        AdaptiveConcurrencyLimit limit = limitFor(request);
+
+        // Not a limited route — continue with the filter chain
+        if (limit == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (!limit.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(OVERLOADED.length);
+            response.getOutputStream().write(OVERLOADED);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            limit.release(System.nanoTime() - start);
+        }
+    }
+
+    private AdaptiveConcurrencyLimit limitFor(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/auth/")) {
+            return this.authLimit;
+        }
+        if (path.startsWith("/api/")) {
+            return this.apiLimit;
+        }
+        return null;
+    }
+}
@@ -61,6 +61,7 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         final String token = authHeader.substring(7); // remove "Bearer "
 
+        ServerTiming.enter(ServerTiming.Phase.JWT);
         try {
             final String email = jwtUtil.extractEmail(token); // "sub" claim
 
@@ -78,6 +79,8 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             }
         } catch (Exception e) {
             logger.warn("Invalid JWT: {}", e);
+        } finally {
+            ServerTiming.exit(ServerTiming.Phase.JWT);
         }
 
         filterChain.doFilter(request, response);
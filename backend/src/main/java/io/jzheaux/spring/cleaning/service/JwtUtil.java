@@ -14,25 +14,32 @@ import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Utility class for creating and validating JSON Web Tokens (JWTs).
  * Encodes user email and ID into the token and supports robust validation
- * via signature and expiry checks.
+ * via signature, expiry and revocation checks.
  */
 @Component
 public class JwtUtil {
 
     private final String SECRET;
+    private final AccessTokenDenylist denylist;
+    private final ReplicationLog replicationLog;
     private static final Duration DEFAULT_ACCESS_TTL = Duration.ofMinutes(15);
 
     /**
      * Initializes the utility with the JWT secret key.
      *
      * @param secret The JWT secret key (injected via application properties).
+     * @param denylist The denylist of revoked access tokens.
+     * @param replicationLog The log that revocations are replicated to other nodes through.
      */
-    public JwtUtil(@Value("${jwt.secret}") String secret) {
+    public JwtUtil(@Value("${jwt.secret}") String secret, AccessTokenDenylist denylist, ReplicationLog replicationLog) {
         this.SECRET = secret;
+        this.denylist = denylist;
+        this.replicationLog = replicationLog;
         System.out.println("JWT SECRET LOADED: " + secret);
     }
 
@@ -53,6 +60,7 @@ public class JwtUtil {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(user.email())          // sub = email
+                .setId(UUID.randomUUID().toString()) // jti, used for revocation
                 .setIssuedAt(now)
                 .setExpiration(exp)
                 .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
@@ -94,7 +102,7 @@ public class JwtUtil {
     }
 
     /**
-     * Validates a token by checking its signature, expiry, and subject (email) against the provided user details.
+     * Validates a token by checking its signature, expiry, revocation, and subject (email) against the provided user details.
      *
      * @param token The JWT string.
      * @param ud    The user details to match.
@@ -103,7 +111,7 @@ public class JwtUtil {
     public boolean isTokenValid(String token, UserDetails ud) {
         try {
             Claims c = extractAllClaims(token);
-            return c.getSubject().equals(ud.getUsername());
+            return c.getSubject().equals(ud.getUsername()) && !isRevoked(c);
         } catch (Exception e) {
             return false;
         }
@@ -125,6 +133,44 @@ public class JwtUtil {
         }
     }
 
+    /**
+     * Revokes a token so that it is rejected, on this node and its peers, until it expires.
+     *
+     * @param token The JWT string.
+     * @throws io.jsonwebtoken.JwtException if the token is not a valid, unexpired JWT.
+     */
+    public void revoke(String token) {
+        Claims c = extractAllClaims(token);
+        denylist.revoke(c.getId(), c.getExpiration().toInstant());
+        if (c.getId() != null) {
+            replicationLog.accessTokenRevoked(c.getId(), c.getExpiration().toInstant());
+        }
+    }
+
+    /**
+     * Applies an access-token revocation replicated from another node.
+     * Revocations never change once made, so applying one twice is harmless.
+     *
+     * @param entry The replicated revocation.
+     */
+    void applyReplicated(ReplicationEntry entry) {
+        if (!replicationLog.isNewer(entry)) {
+            return;
+        }
+        replicationLog.recordRemote(entry);
+        denylist.revoke(entry.revoked().tokenId(), entry.revoked().expiresAt());
+    }
+
+    /**
+     * Checks whether the token with the given claims has been revoked.
+     *
+     * @param claims The token's verified claims.
+     * @return True if the token was revoked.
+     */
+    public boolean isRevoked(Claims claims) {
+        return denylist.isRevoked(claims.getId(), claims.getExpiration().toInstant());
+    }
+
     /**
      * Internal helper to parse a JWT string and return its JWS claims.
      *
@@ -0,0 +1,73 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * {@link UserStore} backed by persistent hash maps, keyed by ID and by email.
+ *
+ * Writers build a new version of both maps and publish it with a single volatile write,
+ * so readers never lock and {@link #values()} is a point-in-time view that later writes
+ * cannot change.
+ */
+public class MapUserStore implements UserStore {
+
+    private volatile Version version = new Version(PersistentHashMap.empty(), PersistentHashMap.empty());
+
+    @Override
+    public UserDTO get(UUID id) {
+        return this.version.users().get(id);
+    }
+
+    @Override
+    public UserDTO findByEmail(String email) {
+        return email == null ? null : this.version.usersByEmail().get(email);
+    }
+
+    @Override
+    public synchronized void save(UserDTO user) {
+        Version current = this.version;
+        PersistentHashMap<UUID, UserDTO> users = current.users();
+        PersistentHashMap<String, UserDTO> usersByEmail = withoutEmailOf(current.usersByEmail(), users.get(user.id()));
+        if (user.email() != null) {
+            usersByEmail = usersByEmail.with(user.email(), user);
+        }
+        this.version = new Version(users.with(user.id(), user), usersByEmail);
+    }
+
+    @Override
+    public synchronized UserDTO remove(UUID id) {
+        Version current = this.version;
+        UserDTO previous = current.users().get(id);
+        if (previous == null) {
+            return null;
+        }
+        this.version = new Version(current.users().without(id), withoutEmailOf(current.usersByEmail(), previous));
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return this.version.users().size();
+    }
+
+    /**
+     * Returns an immutable view of the users as of this call.
+     */
+    @Override
+    public Collection<UserDTO> values() {
+        return this.version.users().values();
+    }
+
+    private static PersistentHashMap<String, UserDTO> withoutEmailOf(PersistentHashMap<String, UserDTO> usersByEmail, UserDTO user) {
+        if (user == null || user.email() == null || usersByEmail.get(user.email()) != user) {
+            return usersByEmail;
+        }
+        return usersByEmail.without(user.email());
+    }
+
+    private record Version(PersistentHashMap<UUID, UserDTO> users, PersistentHashMap<String, UserDTO> usersByEmail) {
+    }
+}
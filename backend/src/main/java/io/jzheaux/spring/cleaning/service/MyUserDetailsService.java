@@ -20,7 +20,7 @@ public class MyUserDetailsService implements UserDetailsService {
     }
 
     /**
-     * Loads a user by email
+     * Loads a user by email.
      *
      * @param email The user's email address.
      * @return A Spring Security {@link UserDetails} object with roles and hashed password.
@@ -28,6 +28,10 @@ public class MyUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
+        if (email == null) {
+            throw new UsernameNotFoundException("user not found");
+        }
+        ServerTiming.enter(ServerTiming.Phase.USER);
         try {
             var user = this.users.findByEmail(email);
             return org.springframework.security.core.userdetails.User
@@ -37,6 +41,8 @@ public class MyUserDetailsService implements UserDetailsService {
                     .build();
         } catch (NotFoundException ex) {
             throw new UsernameNotFoundException("user not found");
+        } finally {
+            ServerTiming.exit(ServerTiming.Phase.USER);
         }
     }
 }
@@ -0,0 +1,352 @@
+package io.jzheaux.spring.cleaning.service;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash map implemented as a hash array mapped trie.
+ *
+ * Every update returns a new map that shares all untouched branches with the old one,
+ * so an update copies only the O(log32 n) nodes on the path to the changed key.
+ * Because no map is ever mutated, readers can hold on to and iterate any version
+ * without locking while writers publish newer ones.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+final class PersistentHashMap<K, V> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        if (this.root == null) {
+            return null;
+        }
+        Entry entry = this.root.find(0, hash(key), key);
+        return entry == null ? null : (V) entry.value;
+    }
+
+    /**
+     * Returns a map that also maps the given key to the given value.
+     */
+    PersistentHashMap<K, V> with(K key, V value) {
+        Entry entry = new Entry(hash(key), key, value);
+        if (this.root == null) {
+            return new PersistentHashMap<>(new BitmapNode(bit(entry.hash, 0), new Object[] { entry }), 1);
+        }
+        boolean[] added = new boolean[1];
+        Node root = this.root.put(0, entry, added);
+        if (root == this.root) {
+            return this;
+        }
+        return new PersistentHashMap<>(root, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a map without the given key.
+     */
+    PersistentHashMap<K, V> without(Object key) {
+        if (this.root == null) {
+            return this;
+        }
+        Node root = this.root.remove(0, hash(key), key);
+        if (root == this.root) {
+            return this;
+        }
+        return root == null ? empty() : new PersistentHashMap<>(root, this.size - 1);
+    }
+
+    /**
+     * Returns an unmodifiable view of this version's values.
+     */
+    Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator<>(PersistentHashMap.this.root);
+            }
+
+            @Override
+            public int size() {
+                return PersistentHashMap.this.size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private record Entry(int hash, Object key, Object value) {
+        boolean matches(int hash, Object key) {
+            return this.hash == hash && this.key.equals(key);
+        }
+    }
+
+    private abstract static sealed class Node permits BitmapNode, CollisionNode {
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Entry find(int shift, int hash, Object key);
+
+        abstract Node put(int shift, Entry entry, boolean[] added);
+
+        abstract Node remove(int shift, int hash, Object key);
+    }
+
+    /**
+     * Branch holding up to 32 entries or child nodes, one per 5-bit hash fragment present in the bitmap.
+     */
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        Entry find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = this.array[index(bit)];
+            if (child instanceof Node node) {
+                return node.find(shift + 5, hash, key);
+            }
+            Entry entry = (Entry) child;
+            return entry.matches(hash, key) ? entry : null;
+        }
+
+        @Override
+        Node put(int shift, Entry entry, boolean[] added) {
+            int bit = bit(entry.hash, shift);
+            int index = index(bit);
+            if ((this.bitmap & bit) == 0) {
+                Object[] array = new Object[this.array.length + 1];
+                System.arraycopy(this.array, 0, array, 0, index);
+                array[index] = entry;
+                System.arraycopy(this.array, index, array, index + 1, this.array.length - index);
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, array);
+            }
+            Object child = this.array[index];
+            if (child instanceof Node node) {
+                Node updated = node.put(shift + 5, entry, added);
+                return updated == node ? this : replace(index, updated);
+            }
+            Entry existing = (Entry) child;
+            if (existing.matches(entry.hash, entry.key)) {
+                return existing.value == entry.value ? this : replace(index, entry);
+            }
+            added[0] = true;
+            return replace(index, merge(shift + 5, existing, entry));
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object child = this.array[index];
+            if (child instanceof Node node) {
+                Node updated = node.remove(shift + 5, hash, key);
+                if (updated == node) {
+                    return this;
+                }
+                if (updated != null) {
+                    return replace(index, collapse(updated));
+                }
+            } else if (!((Entry) child).matches(hash, key)) {
+                return this;
+            }
+            if (this.bitmap == bit) {
+                return null;
+            }
+            Object[] array = new Object[this.array.length - 1];
+            System.arraycopy(this.array, 0, array, 0, index);
+            System.arraycopy(this.array, index + 1, array, index, array.length - index);
+            return new BitmapNode(this.bitmap & ~bit, array);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        private BitmapNode replace(int index, Object child) {
+            Object[] array = this.array.clone();
+            array[index] = child;
+            return new BitmapNode(this.bitmap, array);
+        }
+
+        // a branch left with a single entry is inlined into its parent
+        private static Object collapse(Node node) {
+            if (node instanceof BitmapNode && node.array.length == 1 && node.array[0] instanceof Entry entry) {
+                return entry;
+            }
+            return node;
+        }
+
+        private static Node merge(int shift, Entry first, Entry second) {
+            if (first.hash == second.hash) {
+                return new CollisionNode(first.hash, new Object[] { first, second });
+            }
+            int firstBit = bit(first.hash, shift);
+            int secondBit = bit(second.hash, shift);
+            if (firstBit == secondBit) {
+                return new BitmapNode(firstBit, new Object[] { merge(shift + 5, first, second) });
+            }
+            Object[] array = Integer.compareUnsigned(firstBit, secondBit) < 0
+                    ? new Object[] { first, second }
+                    : new Object[] { second, first };
+            return new BitmapNode(firstBit | secondBit, array);
+        }
+    }
+
+    /**
+     * Leaf holding entries whose full 32-bit hashes are equal.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        @Override
+        Entry find(int shift, int hash, Object key) {
+            for (Object child : this.array) {
+                Entry entry = (Entry) child;
+                if (entry.matches(hash, key)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(int shift, Entry entry, boolean[] added) {
+            if (entry.hash != this.hash) {
+                BitmapNode branch = new BitmapNode(bit(this.hash, shift), new Object[] { this });
+                return branch.put(shift, entry, added);
+            }
+            for (int i = 0; i < this.array.length; i++) {
+                Entry existing = (Entry) this.array[i];
+                if (existing.matches(entry.hash, entry.key)) {
+                    if (existing.value == entry.value) {
+                        return this;
+                    }
+                    Object[] array = this.array.clone();
+                    array[i] = entry;
+                    return new CollisionNode(this.hash, array);
+                }
+            }
+            Object[] array = new Object[this.array.length + 1];
+            System.arraycopy(this.array, 0, array, 0, this.array.length);
+            array[this.array.length] = entry;
+            added[0] = true;
+            return new CollisionNode(this.hash, array);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            for (int i = 0; i < this.array.length; i++) {
+                if (((Entry) this.array[i]).matches(hash, key)) {
+                    if (this.array.length == 1) {
+                        return null;
+                    }
+                    Object[] array = new Object[this.array.length - 1];
+                    System.arraycopy(this.array, 0, array, 0, i);
+                    System.arraycopy(this.array, i + 1, array, i, array.length - i);
+                    return new CollisionNode(this.hash, array);
+                }
+            }
+            return this;
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Deque<Object[]> arrays = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Entry next;
+
+        ValueIterator(Node root) {
+            if (root != null) {
+                this.arrays.push(root.array);
+                this.positions.push(0);
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) this.next.value;
+            advance();
+            return value;
+        }
+
+        private void advance() {
+            this.next = null;
+            while (!this.arrays.isEmpty()) {
+                Object[] array = this.arrays.peek();
+                int position = this.positions.pop();
+                if (position == array.length) {
+                    this.arrays.pop();
+                    continue;
+                }
+                this.positions.push(position + 1);
+                Object child = array[position];
+                if (child instanceof Node node) {
+                    this.arrays.push(node.array);
+                    this.positions.push(0);
+                } else {
+                    this.next = (Entry) child;
+                    return;
+                }
+            }
+        }
+    }
+}
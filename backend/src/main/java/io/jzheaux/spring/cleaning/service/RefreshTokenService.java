@@ -8,16 +8,19 @@ import org.springframework.stereotype.Service;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
 public class RefreshTokenService {
     private static final Duration DEFAULT_TTL = Duration.ofDays(7);
 
-    private Map<UUID, RefreshTokenDTO> tokens = new HashMap<>();
+    private final Map<UUID, RefreshTokenDTO> tokens = new ConcurrentHashMap<>();
+    private final Map<String, RefreshTokenDTO> tokensByValue = new ConcurrentHashMap<>();
+
+    private final ReplicationLog replicationLog;
 
     /**
      * Creates a new refresh token for the given user, optionally with a longer TTL if "remember me" is selected.
@@ -31,7 +34,15 @@ public class RefreshTokenService {
         Duration ttl = rememberMe ? DEFAULT_TTL.multipliedBy(4) : DEFAULT_TTL;
         String token = UUID.randomUUID().toString();
         LocalDateTime expiry = LocalDateTime.now(ZoneOffset.UTC).plusSeconds(ttl.getSeconds());
-        this.tokens.put(userId, new RefreshTokenDTO(userId, token, expiry));
+        RefreshTokenDTO refreshToken = new RefreshTokenDTO(userId, token, expiry);
+        this.tokens.compute(userId, (id, previous) -> {
+            if (previous != null) {
+                this.tokensByValue.remove(previous.refreshToken(), previous);
+            }
+            this.tokensByValue.put(token, refreshToken);
+            this.replicationLog.tokenSaved(refreshToken);
+            return refreshToken;
+        });
         return token;
     }
 
@@ -44,31 +55,69 @@ public class RefreshTokenService {
      * @throws RefreshTokenException if the token is invalid or expired.
      */
     public UUID verifyAndGetUserId(String token) {
-        for (var refreshToken : this.tokens.values()) {
-            if (!refreshToken.refreshToken().equals(token)) {
-                continue;
-            }
-            if (refreshToken.expiry().isBefore(LocalDateTime.now(ZoneOffset.UTC))) {
-                throw new RefreshTokenException("refresh token expired");
-            }
-            return refreshToken.userId();
+        return verify(token).userId();
+    }
+
+    /**
+     * Verifies the given refresh token and returns it if valid.
+     * Automatically deletes expired tokens.
+     *
+     * @param token The refresh token to verify.
+     * @return The stored refresh token, including its user ID and expiry.
+     * @throws RefreshTokenException if the token is invalid or expired.
+     */
+    public RefreshTokenDTO verify(String token) {
+        RefreshTokenDTO refreshToken = (token == null) ? null : this.tokensByValue.get(token);
+        if (refreshToken == null) {
+            throw new RefreshTokenException("invalid refresh token");
+        }
+        if (refreshToken.expiry().isBefore(LocalDateTime.now(ZoneOffset.UTC))) {
+            invalidate(token);
+            throw new RefreshTokenException("refresh token expired");
         }
-        throw new RefreshTokenException("invalid refresh token");
+        return refreshToken;
     }
 
     /**
      * Invalidates a refresh token by removing it from the database.
      *
      * @param token The token to invalidate.
+     * @return The invalidated token, or null if there was no such token.
      */
-    public void invalidate(String token) {
-        Map<UUID, RefreshTokenDTO> tokens = new HashMap<>();
-        for (Map.Entry<UUID, RefreshTokenDTO> entry : this.tokens.entrySet()) {
-            if (!entry.getValue().refreshToken().equals(token)) {
-                tokens.put(entry.getKey(), entry.getValue());
-            }
+    public RefreshTokenDTO invalidate(String token) {
+        RefreshTokenDTO refreshToken = (token == null) ? null : this.tokensByValue.remove(token);
+        if (refreshToken != null) {
+            this.tokens.computeIfPresent(refreshToken.userId(), (id, current) -> {
+                if (!current.equals(refreshToken)) {
+                    return current;
+                }
+                this.replicationLog.tokenDeleted(id);
+                return null;
+            });
         }
-        this.tokens = tokens;
+        return refreshToken;
+    }
+
+    /**
+     * Applies a refresh-token mutation replicated from another node, unless this node already has a newer one.
+     *
+     * @param entry The replicated mutation.
+     */
+    void applyReplicated(ReplicationEntry entry) {
+        this.tokens.compute(entry.key(), (id, current) -> {
+            if (!this.replicationLog.isNewer(entry)) {
+                return current;
+            }
+            this.replicationLog.recordRemote(entry);
+            if (current != null) {
+                this.tokensByValue.remove(current.refreshToken(), current);
+            }
+            if (entry.type() == ReplicationEntry.Type.TOKEN_DELETED) {
+                return null;
+            }
+            this.tokensByValue.put(entry.token().refreshToken(), entry.token());
+            return entry.token();
+        });
     }
 
 }
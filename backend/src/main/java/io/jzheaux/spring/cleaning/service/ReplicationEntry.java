@@ -0,0 +1,68 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.RefreshTokenDTO;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A replicated mutation of one user or of one user's refresh token, or a revoked access token.
+ *
+ * Entries for the same key are ordered by their version, {@code (timestamp, origin)}; the newest one wins.
+ *
+ * @param type      The kind of mutation.
+ * @param key       The user ID the mutation applies to; refresh tokens are keyed by their user's ID,
+ *                  revoked access tokens by {@link #revocationKey}.
+ * @param timestamp The hybrid logical clock reading of the node that made the mutation.
+ * @param origin    The ID of the node that made the mutation.
+ * @param user      The saved user, for {@link Type#USER_SAVED}.
+ * @param token     The saved token, for {@link Type#TOKEN_SAVED}.
+ * @param revoked   The revoked access token, for {@link Type#ACCESS_TOKEN_REVOKED}.
+ */
+record ReplicationEntry(Type type, UUID key, long timestamp, UUID origin, UserDTO user, RefreshTokenDTO token,
+                        RevokedAccessToken revoked) {
+
+    enum Type {
+        USER_SAVED,
+        USER_DELETED,
+        TOKEN_SAVED,
+        TOKEN_DELETED,
+        ACCESS_TOKEN_REVOKED;
+
+        boolean isUser() {
+            return this == USER_SAVED || this == USER_DELETED;
+        }
+
+        boolean isTombstone() {
+            return this == USER_DELETED || this == TOKEN_DELETED;
+        }
+    }
+
+    /**
+     * An access token revoked before its expiry.
+     *
+     * @param tokenId   The token's {@code jti} claim.
+     * @param expiresAt The token's {@code exp} claim.
+     */
+    record RevokedAccessToken(String tokenId, Instant expiresAt) {
+    }
+
+    /**
+     * Returns the key that the revocation of the access token with the given {@code jti} is logged under.
+     */
+    static UUID revocationKey(String tokenId) {
+        return UUID.nameUUIDFromBytes(tokenId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether this entry supersedes another entry for the same key.
+     */
+    boolean isNewerThan(ReplicationEntry other) {
+        if (this.timestamp != other.timestamp) {
+            return this.timestamp > other.timestamp;
+        }
+        return this.origin.compareTo(other.origin) > 0;
+    }
+}
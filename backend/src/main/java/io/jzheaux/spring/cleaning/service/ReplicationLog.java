@@ -0,0 +1,245 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.RefreshTokenDTO;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Compacted log of the user, refresh-token and access-token-revocation mutations known to this node,
+ * local and replicated.
+ *
+ * Every entry gets the next local sequence number, and an entry replaces any earlier one for the
+ * same key, so the log holds one entry per user, one per user's refresh token and one per revoked
+ * access token, deletions included. A peer that resumes from a sequence number therefore receives
+ * every key that changed since then, and a peer starting from zero receives the whole state.
+ *
+ * Deletions are kept as tombstones until {@link #prune} is told that every peer has applied them.
+ * Revocations are kept until the revoked token expires, since a peer that restarts with an empty
+ * denylist needs them again. A peer may still send back an entry that was pruned here, so the
+ * timestamp of each pruned tombstone is kept, and replicated entries no newer than it are ignored,
+ * as are revocations of tokens that have expired.
+ *
+ * The node ID is random on every start. Peers use it to tell that sequence numbers
+ * were reset and they have to start over from zero.
+ *
+ * When replication is disabled, nothing is recorded.
+ */
+@Component
+public class ReplicationLog {
+
+    private final boolean enabled;
+    private final UUID nodeId = UUID.randomUUID();
+
+    // guarded by this
+    private final NavigableMap<Long, ReplicationEntry> entries = new TreeMap<>();
+    private final Map<UUID, Long> userSequences = new HashMap<>();
+    private final Map<UUID, Long> tokenSequences = new HashMap<>();
+    private final Map<UUID, Long> revocationSequences = new HashMap<>();
+    private final NavigableSet<Long> tombstones = new TreeSet<>();
+    private final NavigableSet<Long> revocations = new TreeSet<>();
+    private final Map<UUID, Long> prunedUsers = new HashMap<>();
+    private final Map<UUID, Long> prunedTokens = new HashMap<>();
+    private long sequence;
+    private long clock;
+
+    /**
+     * Constructs the log.
+     *
+     * @param enabled Whether mutations are replicated to other nodes.
+     */
+    public ReplicationLog(@Value("${replication.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public UUID getNodeId() {
+        return this.nodeId;
+    }
+
+    /**
+     * Records a user saved on this node.
+     */
+    public void userSaved(UserDTO user) {
+        recordLocal(ReplicationEntry.Type.USER_SAVED, user.id(), user, null, null);
+    }
+
+    /**
+     * Records a user deleted on this node.
+     */
+    public void userDeleted(UUID userId) {
+        recordLocal(ReplicationEntry.Type.USER_DELETED, userId, null, null, null);
+    }
+
+    /**
+     * Records a refresh token issued on this node.
+     */
+    public void tokenSaved(RefreshTokenDTO token) {
+        recordLocal(ReplicationEntry.Type.TOKEN_SAVED, token.userId(), null, token, null);
+    }
+
+    /**
+     * Records a refresh token removed on this node.
+     */
+    public void tokenDeleted(UUID userId) {
+        recordLocal(ReplicationEntry.Type.TOKEN_DELETED, userId, null, null, null);
+    }
+
+    /**
+     * Records an access token revoked on this node.
+     *
+     * @param tokenId   The token's {@code jti} claim.
+     * @param expiresAt The token's {@code exp} claim.
+     */
+    public void accessTokenRevoked(String tokenId, Instant expiresAt) {
+        recordLocal(ReplicationEntry.Type.ACCESS_TOKEN_REVOKED, ReplicationEntry.revocationKey(tokenId), null, null,
+                new ReplicationEntry.RevokedAccessToken(tokenId, expiresAt));
+    }
+
+    /**
+     * Checks whether an entry from another node supersedes what this node knows about its key.
+     * Callers must hold the lock that guards local writes to that key between this check and {@link #recordRemote}.
+     */
+    synchronized boolean isNewer(ReplicationEntry entry) {
+        ReplicationEntry current = latest(entry.type(), entry.key());
+        if (current != null) {
+            return entry.isNewerThan(current);
+        }
+        if (entry.type() == ReplicationEntry.Type.ACCESS_TOKEN_REVOKED) {
+            return entry.revoked().expiresAt().isAfter(Instant.now());
+        }
+        // a tie with a pruned tombstone is an echo of it, or lost to it when it was applied
+        Long pruned = prunedFor(entry.type()).get(entry.key());
+        return pruned == null || entry.timestamp() > pruned;
+    }
+
+    /**
+     * Returns the newest entry for a user, or null if there is none.
+     */
+    synchronized ReplicationEntry latestUser(UUID userId) {
+        return latest(ReplicationEntry.Type.USER_SAVED, userId);
+    }
+
+    /**
+     * Records an entry from another node, so it is passed on to this node's peers.
+     */
+    synchronized void recordRemote(ReplicationEntry entry) {
+        this.clock = Math.max(this.clock, entry.timestamp());
+        append(entry);
+    }
+
+    /**
+     * Returns the entries after the given sequence number, waiting up to the timeout for one if there are none yet.
+     *
+     * @param after   The last sequence number already seen.
+     * @param max     The maximum number of entries to return.
+     * @param timeout The maximum time to wait, in milliseconds.
+     * @return The entries by sequence number, possibly none.
+     */
+    synchronized NavigableMap<Long, ReplicationEntry> read(long after, int max, long timeout) throws InterruptedException {
+        if (this.sequence <= after) {
+            wait(timeout);
+        }
+        NavigableMap<Long, ReplicationEntry> batch = new TreeMap<>();
+        for (Map.Entry<Long, ReplicationEntry> entry : this.entries.tailMap(after, false).entrySet()) {
+            if (batch.size() == max) {
+                break;
+            }
+            batch.put(entry.getKey(), entry.getValue());
+        }
+        return batch;
+    }
+
+    /**
+     * Drops the tombstones, and the revocations of expired access tokens, that every peer has received.
+     *
+     * @param acknowledged The highest sequence number that every peer has applied.
+     * @param now          The current time, to tell which revoked tokens have expired.
+     */
+    synchronized void prune(long acknowledged, Instant now) {
+        for (Iterator<Long> sequences = this.tombstones.headSet(acknowledged, true).iterator(); sequences.hasNext(); ) {
+            ReplicationEntry entry = forget(sequences.next());
+            prunedFor(entry.type()).put(entry.key(), entry.timestamp());
+            sequences.remove();
+        }
+        for (Iterator<Long> sequences = this.revocations.headSet(acknowledged, true).iterator(); sequences.hasNext(); ) {
+            Long sequence = sequences.next();
+            if (!this.entries.get(sequence).revoked().expiresAt().isAfter(now)) {
+                forget(sequence);
+                sequences.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the log.
+     */
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    private synchronized void recordLocal(ReplicationEntry.Type type, UUID key, UserDTO user, RefreshTokenDTO token,
+                                          ReplicationEntry.RevokedAccessToken revoked) {
+        if (!this.enabled) {
+            return;
+        }
+        // hybrid logical clock: follows wall-clock time, but always moves past every timestamp seen
+        this.clock = Math.max(System.currentTimeMillis(), this.clock + 1);
+        append(new ReplicationEntry(type, key, this.clock, this.nodeId, user, token, revoked));
+    }
+
+    private ReplicationEntry latest(ReplicationEntry.Type type, UUID key) {
+        Long sequence = sequencesFor(type).get(key);
+        return (sequence == null) ? null : this.entries.get(sequence);
+    }
+
+    private Map<UUID, Long> sequencesFor(ReplicationEntry.Type type) {
+        return switch (type) {
+            case USER_SAVED, USER_DELETED -> this.userSequences;
+            case TOKEN_SAVED, TOKEN_DELETED -> this.tokenSequences;
+            case ACCESS_TOKEN_REVOKED -> this.revocationSequences;
+        };
+    }
+
+    private Map<UUID, Long> prunedFor(ReplicationEntry.Type type) {
+        return type.isUser() ? this.prunedUsers : this.prunedTokens;
+    }
+
+    private void append(ReplicationEntry entry) {
+        Long previous = sequencesFor(entry.type()).put(entry.key(), ++this.sequence);
+        if (previous != null) {
+            this.entries.remove(previous);
+            this.tombstones.remove(previous);
+            this.revocations.remove(previous);
+        }
+        this.entries.put(this.sequence, entry);
+        if (entry.type() != ReplicationEntry.Type.ACCESS_TOKEN_REVOKED) {
+            prunedFor(entry.type()).remove(entry.key());
+        }
+        if (entry.type().isTombstone()) {
+            this.tombstones.add(this.sequence);
+        } else if (entry.type() == ReplicationEntry.Type.ACCESS_TOKEN_REVOKED) {
+            this.revocations.add(this.sequence);
+        }
+        notifyAll();
+    }
+
+    private ReplicationEntry forget(Long sequence) {
+        ReplicationEntry entry = this.entries.remove(sequence);
+        sequencesFor(entry.type()).remove(entry.key());
+        return entry;
+    }
+}
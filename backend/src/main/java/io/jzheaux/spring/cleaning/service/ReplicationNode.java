@@ -0,0 +1,455 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.RefreshTokenDTO;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replicates user and refresh-token mutations, and access-token revocations, between nodes over TCP,
+ * so that any node can serve any user.
+ *
+ * Each node serves its {@link ReplicationLog} on {@code replication.port} and pulls from every node in
+ * {@code replication.peers}. Both sides of a connection first prove that they know {@code replication.secret}
+ * with an HMAC over fresh nonces from each side and both node IDs; a peer that fails is disconnected
+ * before any entry is sent to it or applied from it. The puller then sends the last sequence number it
+ * applied from the peer; the peer streams the log from there in batches, then keeps streaming new entries,
+ * with empty batches as heartbeats. The puller acknowledges every batch, and once every node in
+ * {@code replication.peers} has acknowledged a tombstone, it is dropped from the log.
+ *
+ * Entries are applied only if they are newer than what the node already has, and are passed on to its
+ * own pullers, so nodes converge even when some pairs can't reach each other. A restarted node has a new
+ * node ID, so its peers and the node itself both start again from sequence zero and catch up on the whole state.
+ *
+ * A node serves at most one connection per configured peer plus {@value #SPARE_CONNECTIONS}, so that a
+ * restarted peer can reconnect before its old connection times out; further connections are closed
+ * before the handshake.
+ *
+ * Reads never leave the node. The handshake authenticates peers, but the stream after it is neither
+ * encrypted nor signed and carries password hashes and refresh tokens, so the port must still only be
+ * reachable on a private network.
+ */
+@Component
+public class ReplicationNode {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationNode.class);
+
+    private static final int MAGIC = 0x52504C32;
+    private static final String HMAC = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final int NONCE_BYTES = 32;
+    private static final int PROOF_BYTES = 32;
+    private static final int BATCH_ENTRIES = 512;
+    private static final long HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int READ_TIMEOUT_MILLIS = (int) (HEARTBEAT_MILLIS * 5);
+    private static final long RECONNECT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int SPARE_CONNECTIONS = 2;
+
+    private static final ReplicationEntry.Type[] TYPES = ReplicationEntry.Type.values();
+
+    private final ReplicationLog replicationLog;
+    private final UserService userService;
+    private final RefreshTokenService refreshTokenService;
+    private final JwtUtil jwtUtil;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    // the node ID last seen at each peer's address, and the highest sequence number each puller has applied
+    private final Map<InetSocketAddress, UUID> peerIds = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> acknowledged = new ConcurrentHashMap<>();
+    private final int peerCount;
+    private final ThreadPoolExecutor servers;
+
+    private volatile boolean running;
+    private ServerSocket server;
+
+    /**
+     * Constructs the node and, if replication is enabled, starts serving and pulling.
+     *
+     * @param replicationLog      The log to serve and to record replicated entries in.
+     * @param userService         The service that replicated user mutations are applied to.
+     * @param refreshTokenService The service that replicated refresh-token mutations are applied to.
+     * @param jwtUtil             The utility that replicated access-token revocations are applied to.
+     * @param secret              The secret shared by all nodes, at least 32 bytes long.
+     * @param bindAddress         The address to accept peer connections on.
+     * @param port                The port to accept peer connections on; 0 picks a free one.
+     * @param peers               The {@code host:port} replication addresses of the other nodes.
+     * @throws IllegalStateException if replication is enabled without a long enough secret.
+     */
+    public ReplicationNode(ReplicationLog replicationLog,
+                           UserService userService,
+                           RefreshTokenService refreshTokenService,
+                           JwtUtil jwtUtil,
+                           @Value("${replication.secret:}") String secret,
+                           @Value("${replication.bind-address:127.0.0.1}") String bindAddress,
+                           @Value("${replication.port:9100}") int port,
+                           @Value("${replication.peers:}") List<String> peers) throws IOException {
+        this.replicationLog = replicationLog;
+        this.userService = userService;
+        this.refreshTokenService = refreshTokenService;
+        this.jwtUtil = jwtUtil;
+        byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        this.key = (secretBytes.length == 0) ? null : new SecretKeySpec(secretBytes, HMAC);
+        List<InetSocketAddress> addresses = replicationLog.isEnabled() ? addresses(peers) : List.of();
+        this.peerCount = addresses.size();
+        AtomicInteger count = new AtomicInteger();
+        this.servers = new ThreadPoolExecutor(0, this.peerCount + SPARE_CONNECTIONS, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                task -> {
+                    Thread thread = new Thread(task, "replication-serve-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (!replicationLog.isEnabled()) {
+            return;
+        }
+        if (secretBytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("replication.secret must be at least " + MIN_SECRET_BYTES + " bytes long");
+        }
+        this.server = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+        this.running = true;
+        start("replication-server", this::accept);
+        for (InetSocketAddress address : addresses) {
+            start("replication-pull-" + address.getHostString() + ":" + address.getPort(), () -> pull(address));
+        }
+        log.info("Replicating on {} with peers {}", this.server.getLocalSocketAddress(), peers);
+    }
+
+    /**
+     * Returns the port accepting peer connections, or -1 if replication is disabled.
+     */
+    public int getPort() {
+        return (this.server == null) ? -1 : this.server.getLocalPort();
+    }
+
+    /**
+     * Stops serving and pulling.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        this.server.close();
+        this.servers.shutdownNow();
+        for (Socket socket : this.sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (this.running) {
+            try {
+                Socket socket = this.server.accept();
+                try {
+                    this.servers.execute(() -> serve(socket));
+                } catch (RejectedExecutionException ex) {
+                    log.warn("Refused replication connection from {}: {} connections already open",
+                            socket.getRemoteSocketAddress(), this.servers.getMaximumPoolSize());
+                    socket.close();
+                }
+            } catch (IOException ex) {
+                if (this.running) {
+                    log.warn("Failed to accept replication connection", ex);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        this.sockets.add(socket);
+        try (socket) {
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a replication peer");
+            }
+            UUID pullerId = readUuid(in);
+            byte[] pullerNonce = readBytes(in, NONCE_BYTES);
+            byte[] nonce = nonce();
+            UUID nodeId = this.replicationLog.getNodeId();
+            writeUuid(out, nodeId);
+            out.write(nonce);
+            out.write(proof("server", pullerNonce, nonce, nodeId, pullerId));
+            out.flush();
+            if (!MessageDigest.isEqual(readBytes(in, PROOF_BYTES), proof("puller", nonce, pullerNonce, pullerId, nodeId))) {
+                log.warn("Rejected replication peer {}: wrong secret", socket.getRemoteSocketAddress());
+                return;
+            }
+            long after = in.readLong();
+            while (this.running) {
+                NavigableMap<Long, ReplicationEntry> batch = this.replicationLog.read(after, BATCH_ENTRIES, HEARTBEAT_MILLIS);
+                out.writeInt(batch.size());
+                for (Map.Entry<Long, ReplicationEntry> entry : batch.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    writeEntry(out, entry.getValue());
+                }
+                out.flush();
+                if (!batch.isEmpty()) {
+                    after = batch.lastKey();
+                }
+                if (in.readLong() != after) {
+                    throw new IOException("Batch not acknowledged");
+                }
+                acknowledge(pullerId, after);
+            }
+        } catch (IOException ex) {
+            log.debug("Replication connection from {} closed", socket.getRemoteSocketAddress(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.sockets.remove(socket);
+        }
+    }
+
+    private void pull(InetSocketAddress address) {
+        UUID peerId = null;
+        long applied = 0;
+        while (this.running) {
+            Socket socket = new Socket();
+            this.sockets.add(socket);
+            try (socket) {
+                socket.connect(address, READ_TIMEOUT_MILLIS);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                UUID nodeId = this.replicationLog.getNodeId();
+                byte[] nonce = nonce();
+                out.writeInt(MAGIC);
+                writeUuid(out, nodeId);
+                out.write(nonce);
+                out.flush();
+                UUID serverId = readUuid(in);
+                byte[] serverNonce = readBytes(in, NONCE_BYTES);
+                if (!MessageDigest.isEqual(readBytes(in, PROOF_BYTES), proof("server", nonce, serverNonce, serverId, nodeId))) {
+                    log.warn("Rejected replication peer {}: wrong secret", address);
+                    sleep(RECONNECT_MILLIS);
+                    continue;
+                }
+                if (!serverId.equals(peerId)) {
+                    log.info("Replicating from {} ({}) from the start", address, serverId);
+                    peerId = serverId;
+                    applied = 0;
+                    this.peerIds.put(address, serverId);
+                }
+                out.write(proof("puller", serverNonce, nonce, nodeId, serverId));
+                out.writeLong(applied);
+                out.flush();
+                while (this.running) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        long sequence = in.readLong();
+                        if (sequence <= applied) {
+                            throw new IOException("Sequence " + sequence + " is not after " + applied);
+                        }
+                        apply(readEntry(in));
+                        applied = sequence;
+                    }
+                    out.writeLong(applied);
+                    out.flush();
+                }
+            } catch (IOException ex) {
+                if (this.running) {
+                    log.debug("Replication from {} interrupted, reconnecting", address, ex);
+                }
+            } catch (RuntimeException ex) {
+                log.error("Failed to apply replicated entry from {}, reconnecting", address, ex);
+            } finally {
+                this.sockets.remove(socket);
+            }
+            sleep(RECONNECT_MILLIS);
+        }
+    }
+
+    // prunes the log up to the lowest sequence number that the current instance of every peer has applied
+    private void acknowledge(UUID pullerId, long sequence) {
+        this.acknowledged.put(pullerId, sequence);
+        if (this.peerIds.size() < this.peerCount) {
+            return;
+        }
+        long lowest = Long.MAX_VALUE;
+        for (UUID peerId : this.peerIds.values()) {
+            lowest = Math.min(lowest, this.acknowledged.getOrDefault(peerId, 0L));
+        }
+        this.acknowledged.keySet().retainAll(this.peerIds.values());
+        this.replicationLog.prune(lowest, Instant.now());
+    }
+
+    private void apply(ReplicationEntry entry) {
+        if (entry.type().isUser()) {
+            this.userService.applyReplicated(entry);
+        } else if (entry.type() == ReplicationEntry.Type.ACCESS_TOKEN_REVOKED) {
+            this.jwtUtil.applyReplicated(entry);
+        } else {
+            this.refreshTokenService.applyReplicated(entry);
+        }
+    }
+
+    private byte[] nonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        this.random.nextBytes(nonce);
+        return nonce;
+    }
+
+    // what a side sends to prove it knows the secret: an HMAC over its role, both nonces and both node IDs
+    private byte[] proof(String role, byte[] firstNonce, byte[] secondNonce, UUID sender, UUID receiver) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(this.key);
+            mac.update(role.getBytes(StandardCharsets.US_ASCII));
+            mac.update(firstNonce);
+            mac.update(secondNonce);
+            mac.update(ByteBuffer.allocate(32)
+                    .putLong(sender.getMostSignificantBits()).putLong(sender.getLeastSignificantBits())
+                    .putLong(receiver.getMostSignificantBits()).putLong(receiver.getLeastSignificantBits())
+                    .array());
+            return mac.doFinal();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(HMAC + " is not available", ex);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, ReplicationEntry entry) throws IOException {
+        out.writeByte(entry.type().ordinal());
+        writeUuid(out, entry.key());
+        out.writeLong(entry.timestamp());
+        writeUuid(out, entry.origin());
+        switch (entry.type()) {
+            case USER_SAVED -> {
+                UserDTO user = entry.user();
+                writeString(out, user.name());
+                writeString(out, user.password());
+                writeString(out, user.email());
+                out.writeInt(user.age());
+            }
+            case TOKEN_SAVED -> {
+                RefreshTokenDTO token = entry.token();
+                writeString(out, token.refreshToken());
+                out.writeLong(token.expiry().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(token.expiry().getNano());
+            }
+            case ACCESS_TOKEN_REVOKED -> {
+                out.writeUTF(entry.revoked().tokenId());
+                out.writeLong(entry.revoked().expiresAt().toEpochMilli());
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static ReplicationEntry readEntry(DataInputStream in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= TYPES.length) {
+            throw new IOException("Unknown entry type " + ordinal);
+        }
+        ReplicationEntry.Type type = TYPES[ordinal];
+        UUID key = readUuid(in);
+        long timestamp = in.readLong();
+        UUID origin = readUuid(in);
+        UserDTO user = null;
+        RefreshTokenDTO token = null;
+        ReplicationEntry.RevokedAccessToken revoked = null;
+        switch (type) {
+            case USER_SAVED -> user = new UserDTO(key, readString(in), readString(in), readString(in), in.readInt());
+            case TOKEN_SAVED -> token = new RefreshTokenDTO(key, readString(in),
+                    LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            case ACCESS_TOKEN_REVOKED -> revoked = new ReplicationEntry.RevokedAccessToken(in.readUTF(),
+                    Instant.ofEpochMilli(in.readLong()));
+            default -> {
+            }
+        }
+        return new ReplicationEntry(type, key, timestamp, origin, user, token, revoked);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static List<InetSocketAddress> addresses(List<String> peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.isBlank()) {
+                continue;
+            }
+            String[] hostAndPort = peer.trim().split(":");
+            addresses.add(new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])));
+        }
+        return addresses;
+    }
+
+    private static void start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.running = false;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.jzheaux.spring.cleaning.service;
+
+import java.util.Arrays;
+
+/**
+ * Per-request breakdown of where time goes, reported in the {@code Server-Timing} response header.
+ *
+ * Each thread has one preallocated set of slots, so entering and leaving a phase only reads
+ * {@link System#nanoTime()} and updates primitive arrays; nothing is allocated. {@link #header()}
+ * formats into a reused buffer but has to return a new String. Phases nest, and
+ * each one is charged only for its own time: while a nested phase runs, the enclosing phase is paused.
+ * Outside of a request started with {@link #begin()}, entering and leaving phases does nothing.
+ */
+public final class ServerTiming {
+    public static final String HEADER = "Server-Timing";
+
+    private static final int MAX_DEPTH = 8;
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<Slots> SLOTS = ThreadLocal.withInitial(Slots::new);
+
+    /**
+     * The timed phases of a request, with their {@code Server-Timing} metric names.
+     */
+    public enum Phase {
+        JWT("jwt"),
+        USER("user"),
+        PASSWORD("password"),
+        CONTROLLER("controller"),
+        WRITE("write");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+    }
+
+    private ServerTiming() {
+    }
+
+    /**
+     * Starts timing a request on the current thread, discarding any previous timings.
+     */
+    public static void begin() {
+        Slots slots = SLOTS.get();
+        Arrays.fill(slots.nanos, 0);
+        slots.depth = 0;
+        slots.overflow = 0;
+        slots.start = System.nanoTime();
+        slots.mark = slots.start;
+        slots.active = true;
+    }
+
+    /**
+     * Stops timing the request on the current thread.
+     */
+    public static void end() {
+        SLOTS.get().active = false;
+    }
+
+    /**
+     * Enters a phase, pausing the enclosing one. Every call must be paired with {@link #exit(Phase)}.
+     *
+     * @param phase The phase being entered.
+     */
+    public static void enter(Phase phase) {
+        Slots slots = SLOTS.get();
+        if (!slots.active) {
+            return;
+        }
+        if (slots.depth == MAX_DEPTH) {
+            slots.overflow++;
+            return;
+        }
+        long now = System.nanoTime();
+        if (slots.depth > 0) {
+            slots.nanos[slots.stack[slots.depth - 1]] += now - slots.mark;
+        }
+        slots.mark = now;
+        slots.stack[slots.depth++] = phase.ordinal();
+    }
+
+    /**
+     * Leaves a phase and resumes the enclosing one. Does nothing if the given phase is not the current one.
+     *
+     * @param phase The phase being left.
+     */
+    public static void exit(Phase phase) {
+        Slots slots = SLOTS.get();
+        if (!slots.active) {
+            return;
+        }
+        if (slots.overflow > 0) {
+            slots.overflow--;
+            return;
+        }
+        if (slots.depth == 0 || slots.stack[slots.depth - 1] != phase.ordinal()) {
+            return;
+        }
+        long now = System.nanoTime();
+        slots.nanos[phase.ordinal()] += now - slots.mark;
+        slots.mark = now;
+        slots.depth--;
+    }
+
+    /**
+     * Formats the timings so far as a {@code Server-Timing} header value, for example
+     * {@code jwt;dur=0.210, user;dur=0.015, controller;dur=1.302, total;dur=1.840}, in milliseconds.
+     *
+     * @return The header value, or null if no request is being timed.
+     */
+    public static String header() {
+        Slots slots = SLOTS.get();
+        if (!slots.active) {
+            return null;
+        }
+        long now = System.nanoTime();
+        StringBuilder header = slots.header;
+        header.setLength(0);
+        for (Phase phase : PHASES) {
+            long nanos = slots.nanos[phase.ordinal()];
+            if (slots.depth > 0 && slots.stack[slots.depth - 1] == phase.ordinal()) {
+                nanos += now - slots.mark;
+            }
+            if (nanos > 0) {
+                appendMetric(header, phase.metric, nanos);
+            }
+        }
+        appendMetric(header, "total", now - slots.start);
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String metric, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        long micros = nanos / 1_000;
+        long fraction = micros % 1_000;
+        header.append(metric).append(";dur=").append(micros / 1_000).append('.');
+        if (fraction < 100) {
+            header.append('0');
+        }
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+
+    private static final class Slots {
+        private final long[] nanos = new long[PHASES.length];
+        private final int[] stack = new int[MAX_DEPTH];
+        private final StringBuilder header = new StringBuilder(128);
+        private int depth;
+        private int overflow;
+        private long start;
+        private long mark;
+        private boolean active;
+    }
+}
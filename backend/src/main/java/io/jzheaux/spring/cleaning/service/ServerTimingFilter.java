@@ -0,0 +1,247 @@
+package io.jzheaux.spring.cleaning.service;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Filter that times each request with {@link ServerTiming} and reports the result in the {@code Server-Timing} header.
+ *
+ * The header is added when the response body is first flushed, which for bodies that fit in the
+ * response buffer is after they have been fully written, so the {@code write} phase is included.
+ * A larger body commits the response when it fills the buffer, so its header is added just before
+ * that with the timings so far, and the complete timings follow in a {@code Server-Timing} trailer
+ * where the connection supports trailers (chunked HTTP/1.1 or HTTP/2).
+ *
+ * When the access-log field is enabled, the timings are also stored in the {@value #ACCESS_LOG_ATTRIBUTE}
+ * request attribute, for example for Tomcat's {@code %{serverTiming}r} access-log pattern. It reuses the
+ * header value unless a trailer was sent, in which case it holds the complete timings.
+ *
+ * Bodies written through {@link HttpServletResponse#getWriter()} are encoded onto the timed output
+ * stream, so they are counted and timed the same way.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String ACCESS_LOG_ATTRIBUTE = "serverTiming";
+
+    private final boolean accessLog;
+
+    /**
+     * Constructs the filter.
+     *
+     * @param accessLog Whether to store the timings in the {@value #ACCESS_LOG_ATTRIBUTE} request attribute.
+     */
+    public ServerTimingFilter(boolean accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+
+        ServerTiming.begin();
+        TimedResponse timed = new TimedResponse(response);
+        try {
+            filterChain.doFilter(request, timed);
+        } finally {
+            String timing = timed.finish(!request.isAsyncStarted());
+            if (this.accessLog) {
+                request.setAttribute(ACCESS_LOG_ATTRIBUTE, timing);
+            }
+            ServerTiming.end();
+        }
+    }
+
+    // adds the header just before the response is committed
+    private static final class TimedResponse extends HttpServletResponseWrapper {
+        private TimedOutputStream outputStream;
+        private PrintWriter writer;
+        private boolean trailer;
+        private long written;
+        private String timing;
+
+        TimedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        // ends the write phase and returns the timings to log, which are final unless the request went async
+        String finish(boolean complete) {
+            ServerTiming.exit(ServerTiming.Phase.WRITE);
+            if (complete && this.writer != null) {
+                // the encoder may still hold the end of the body, which the container can't see
+                this.writer.flush();
+            }
+            if (this.trailer) {
+                this.timing = ServerTiming.header();
+            } else {
+                addTimingHeader();
+            }
+            return this.timing;
+        }
+
+        void commitTimings() {
+            ServerTiming.exit(ServerTiming.Phase.WRITE);
+            addTimingHeader();
+        }
+
+        // a write that fills the buffer commits the response, so the header has to go out before it
+        void beforeWrite(int length) {
+            this.written += length;
+            if (this.timing == null && this.written >= getBufferSize()) {
+                addTimingHeader();
+                addTimingTrailer();
+            }
+        }
+
+        private void addTimingHeader() {
+            if (this.timing == null) {
+                this.timing = ServerTiming.header();
+                if (!isCommitted()) {
+                    setHeader(ServerTiming.HEADER, this.timing);
+                }
+            }
+        }
+
+        private void addTimingTrailer() {
+            if (isCommitted()) {
+                return;
+            }
+            try {
+                // the container asks for the trailer once the filter chain has returned and finish() has run
+                setTrailerFields(() -> Map.of(ServerTiming.HEADER, this.timing));
+                addHeader(HttpHeaders.TRAILER, ServerTiming.HEADER);
+                this.trailer = true;
+            } catch (IllegalStateException ex) {
+                // HTTP/1.0, or a connection without trailers
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (this.writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            if (this.outputStream == null) {
+                this.outputStream = new TimedOutputStream(this, super.getOutputStream());
+            }
+            return this.outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (this.writer == null) {
+                if (this.outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                this.outputStream = new TimedOutputStream(this, super.getOutputStream());
+                this.writer = new PrintWriter(new OutputStreamWriter(this.outputStream, getCharacterEncoding()));
+            }
+            return this.writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            commitTimings();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            this.written = 0;
+            discardWriter();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            this.written = 0;
+            this.trailer = false;
+            this.timing = null;
+            discardWriter();
+        }
+
+        // drops what the encoder holds along with the container's buffer, by handing out a new writer next time
+        private void discardWriter() {
+            if (this.writer != null) {
+                this.writer = null;
+                this.outputStream = null;
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            commitTimings();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            commitTimings();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            commitTimings();
+            super.sendRedirect(location);
+        }
+    }
+
+    private static final class TimedOutputStream extends ServletOutputStream {
+        private final TimedResponse response;
+        private final ServletOutputStream delegate;
+
+        TimedOutputStream(TimedResponse response, ServletOutputStream delegate) {
+            this.response = response;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.response.beforeWrite(1);
+            this.delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.response.beforeWrite(len);
+            this.delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.response.commitTimings();
+            this.delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.response.commitTimings();
+            this.delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.delegate.setWriteListener(listener);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.jzheaux.spring.cleaning.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same key into one.
+ *
+ * The first caller for a key runs the computation on its own thread; callers that arrive
+ * while it is in flight wait for and share its result or exception. Nothing is cached:
+ * once the computation finishes, the next caller starts a new one.
+ *
+ * @param <K> The key type.
+ * @param <V> The result type.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the result of the in-flight computation for the key, or runs the given one.
+     *
+     * @param key         The key identifying identical computations.
+     * @param computation The computation to run if none is in flight.
+     * @return The computation's result.
+     * @throws RuntimeException The exception thrown by the computation, rethrown to every caller.
+     */
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = this.inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return join(existing);
+        }
+        try {
+            V value = computation.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            this.inFlight.remove(key, mine);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+}
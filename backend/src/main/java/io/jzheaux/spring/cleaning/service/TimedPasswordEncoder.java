@@ -0,0 +1,45 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Password encoder that times the encoder it delegates to as the {@link ServerTiming.Phase#PASSWORD} phase.
+ */
+public class TimedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+
+    /**
+     * Constructs the encoder.
+     *
+     * @param delegate The encoder that does the hashing.
+     */
+    public TimedPasswordEncoder(PasswordEncoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        ServerTiming.enter(ServerTiming.Phase.PASSWORD);
+        try {
+            return this.delegate.encode(rawPassword);
+        } finally {
+            ServerTiming.exit(ServerTiming.Phase.PASSWORD);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        ServerTiming.enter(ServerTiming.Phase.PASSWORD);
+        try {
+            return this.delegate.matches(rawPassword, encodedPassword);
+        } finally {
+            ServerTiming.exit(ServerTiming.Phase.PASSWORD);
+        }
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return this.delegate.upgradeEncoding(encodedPassword);
+    }
+}
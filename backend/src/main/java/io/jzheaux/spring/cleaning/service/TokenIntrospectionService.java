@@ -0,0 +1,147 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jzheaux.spring.cleaning.dto.RefreshTokenDTO;
+import io.jzheaux.spring.cleaning.dto.TokenIntrospectionDTO;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import io.jzheaux.spring.cleaning.exceptions.BadRequestException;
+import io.jzheaux.spring.cleaning.exceptions.NotFoundException;
+import io.jzheaux.spring.cleaning.exceptions.RefreshTokenException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service for checking batches of access and refresh tokens on behalf of API gateways.
+ *
+ * Callers authenticate with a shared client secret. Tokens are verified on a dedicated, bounded
+ * pool of threads; once its queue is full, the calling thread verifies its own tokens instead.
+ */
+@Service
+public class TokenIntrospectionService {
+    public static final String CLIENT_SECRET_HEADER = "X-Client-Secret";
+
+    static final int MAX_BATCH_SIZE = 100;
+
+    private final JwtUtil jwtUtil;
+    private final RefreshTokenService rtService;
+    private final UserService userService;
+    private final byte[] clientSecret;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructs the service with the components that verify each kind of token.
+     *
+     * @param jwtUtil       Utility for verifying access tokens.
+     * @param rtService     Service for verifying refresh tokens.
+     * @param userService   Service for resolving the owner of a token.
+     * @param clientSecret  Secret that gateways must present; introspection is refused while it is empty.
+     * @param threads       Number of threads verifying tokens.
+     * @param queueCapacity Number of tokens that can wait for a thread.
+     */
+    public TokenIntrospectionService(JwtUtil jwtUtil, RefreshTokenService rtService, UserService userService,
+                                     @Value("${introspection.client-secret:}") String clientSecret,
+                                     @Value("${introspection.threads:4}") int threads,
+                                     @Value("${introspection.queue-capacity:256}") int queueCapacity) {
+        this.jwtUtil = jwtUtil;
+        this.rtService = rtService;
+        this.userService = userService;
+        this.clientSecret = clientSecret.getBytes(StandardCharsets.UTF_8);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "introspection-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, executor) -> task.run());
+    }
+
+    /**
+     * Verifies each token in parallel. Tokens in JWT form are checked as access tokens,
+     * including revocation, and all others as refresh tokens. Either kind is only active
+     * while its user exists.
+     *
+     * @param clientSecret The secret presented by the gateway.
+     * @param tokens       The tokens to verify, at most {@value #MAX_BATCH_SIZE} of them.
+     * @return One result per token, in the same order as the given tokens.
+     * @throws BadCredentialsException if the client secret is missing or wrong.
+     * @throws BadRequestException if the batch is empty or too large.
+     */
+    public List<TokenIntrospectionDTO> introspect(String clientSecret, List<String> tokens) {
+        if (this.clientSecret.length == 0 || clientSecret == null
+                || !MessageDigest.isEqual(this.clientSecret, clientSecret.getBytes(StandardCharsets.UTF_8))) {
+            throw new BadCredentialsException("invalid client secret");
+        }
+        if (tokens == null || tokens.isEmpty()) {
+            throw new BadRequestException("tokens must not be empty");
+        }
+        if (tokens.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("at most " + MAX_BATCH_SIZE + " tokens can be introspected at once");
+        }
+        List<CompletableFuture<TokenIntrospectionDTO>> results = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            results.add(CompletableFuture.supplyAsync(() -> introspect(token), this.executor));
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Stops the introspection threads.
+     */
+    @PreDestroy
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    private TokenIntrospectionDTO introspect(String token) {
+        if (token == null || token.isBlank()) {
+            return TokenIntrospectionDTO.inactive();
+        }
+        return (token.indexOf('.') >= 0) ? introspectAccessToken(token) : introspectRefreshToken(token);
+    }
+
+    private TokenIntrospectionDTO introspectAccessToken(String token) {
+        try {
+            Claims claims = this.jwtUtil.extractAllClaims(token);
+            if (this.jwtUtil.isRevoked(claims)) {
+                return TokenIntrospectionDTO.inactive();
+            }
+            String userId = claims.get("userId", String.class);
+            if (userId == null) {
+                return TokenIntrospectionDTO.inactive();
+            }
+            UserDTO user = this.userService.getUserById(UUID.fromString(userId));
+            return new TokenIntrospectionDTO(true, "access_token", claims.getSubject(), user.id(),
+                    claims.getExpiration().toInstant());
+        } catch (JwtException | IllegalArgumentException | NotFoundException ex) {
+            return TokenIntrospectionDTO.inactive();
+        }
+    }
+
+    private TokenIntrospectionDTO introspectRefreshToken(String token) {
+        try {
+            RefreshTokenDTO refreshToken = this.rtService.verify(token);
+            UserDTO user = this.userService.getUserById(refreshToken.userId());
+            return new TokenIntrospectionDTO(true, "refresh_token", user.email(), user.id(),
+                    refreshToken.expiry().toInstant(ZoneOffset.UTC));
+        } catch (RefreshTokenException | NotFoundException ex) {
+            return TokenIntrospectionDTO.inactive();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * In-memory secondary indexes used to answer user searches without scanning every user.
+ *
+ * Names are kept lower-cased in a sorted map so that a prefix query is a range scan.
+ * Ages are kept in a navigable map of name-sorted buckets, so that an age range only visits
+ * matching ages, and a name prefix within an age range is one range scan per age.
+ * Both indexes hold user IDs only; callers resolve them against the primary user store.
+ *
+ * Searches may run concurrently with writes, and see a weakly consistent view of them;
+ * writes themselves must be serialized by the caller.
+ */
+class UserSearchIndex {
+
+    private final NavigableMap<String, Set<UUID>> byName = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Integer, NavigableMap<String, Set<UUID>>> byAge = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds a user to both indexes.
+     *
+     * @param user The user to index.
+     */
+    void add(UserDTO user) {
+        this.byName.computeIfAbsent(nameKey(user.name()), k -> ConcurrentHashMap.newKeySet()).add(user.id());
+        this.byAge.computeIfAbsent(user.age(), k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(nameKey(user.name()), k -> ConcurrentHashMap.newKeySet()).add(user.id());
+    }
+
+    /**
+     * Removes a user from both indexes.
+     *
+     * @param user The user to remove, as it was when it was indexed.
+     */
+    void remove(UserDTO user) {
+        removeFrom(this.byName, nameKey(user.name()), user.id());
+        NavigableMap<String, Set<UUID>> names = this.byAge.get(user.age());
+        if (names != null) {
+            removeFrom(names, nameKey(user.name()), user.id());
+            if (names.isEmpty()) {
+                this.byAge.remove(user.age());
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of users that may match the given criteria, lazily and in index order.
+     *
+     * With only a name prefix, candidates come from the name index in name order. With only
+     * an age range, they come from the age index in age order. With both, the prefix is looked
+     * up within each age in the range and the results are merged back into name order, so the
+     * cost depends on the number of ages and matches rather than on how many users share the prefix.
+     * The indexes are weakly consistent, so callers must still check each resolved user.
+     *
+     * @param namePrefix Case-insensitive name prefix, or null for any name.
+     * @param minAge     Inclusive lower age bound.
+     * @param maxAge     Inclusive upper age bound.
+     * @return A lazy stream of candidate user IDs.
+     */
+    Stream<UUID> candidates(String namePrefix, int minAge, int maxAge) {
+        NavigableMap<Integer, NavigableMap<String, Set<UUID>>> ages = this.byAge.subMap(minAge, true, maxAge, true);
+        if (namePrefix == null || namePrefix.isEmpty()) {
+            return ages.values().stream()
+                    .flatMap(names -> names.values().stream())
+                    .flatMap(Set::stream);
+        }
+        String from = nameKey(namePrefix);
+        String to = from + Character.MAX_VALUE;
+        if (minAge == Integer.MIN_VALUE && maxAge == Integer.MAX_VALUE) {
+            return this.byName.subMap(from, true, to, false)
+                    .values().stream().flatMap(Set::stream);
+        }
+        List<Iterator<Map.Entry<String, Set<UUID>>>> perAge = new ArrayList<>();
+        for (NavigableMap<String, Set<UUID>> names : ages.values()) {
+            perAge.add(names.subMap(from, true, to, false).entrySet().iterator());
+        }
+        Iterator<Set<UUID>> merged = new MergingIterator(perAge);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .flatMap(Set::stream);
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    // merges name-sorted iterators, one per age, into a single name-sorted sequence
+    private static final class MergingIterator implements Iterator<Set<UUID>> {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing((Head head) -> head.entry.getKey()));
+
+        MergingIterator(List<Iterator<Map.Entry<String, Set<UUID>>>> iterators) {
+            for (Iterator<Map.Entry<String, Set<UUID>>> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    this.heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.heads.isEmpty();
+        }
+
+        @Override
+        public Set<UUID> next() {
+            Head head = this.heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Set<UUID> ids = head.entry.getValue();
+            if (head.rest.hasNext()) {
+                this.heads.add(new Head(head.rest.next(), head.rest));
+            }
+            return ids;
+        }
+
+        private record Head(Map.Entry<String, Set<UUID>> entry, Iterator<Map.Entry<String, Set<UUID>>> rest) {
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID id) {
+        Set<UUID> ids = index.get(key);
+        if (ids == null) {
+            return;
+        }
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
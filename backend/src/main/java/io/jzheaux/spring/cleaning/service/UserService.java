@@ -3,6 +3,7 @@ package io.jzheaux.spring.cleaning.service;
 import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
 import io.jzheaux.spring.cleaning.dto.UserDTO;
 import io.jzheaux.spring.cleaning.exceptions.AlreadyExistsException;
+import io.jzheaux.spring.cleaning.exceptions.BadRequestException;
 import io.jzheaux.spring.cleaning.exceptions.NotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -17,21 +18,33 @@ import java.util.*;
 @Slf4j
 public class UserService {
 
+    static final int MAX_SEARCH_LIMIT = 1000;
+
     private final PasswordEncoder passwordEncoder;
 
-    private Map<UUID, UserDTO> users = new HashMap<>();
+    private final UserStore users;
+
+    private final ReplicationLog replicationLog;
+
+    private final UserSearchIndex searchIndex = new UserSearchIndex();
+
+    private final Object writeLock = new Object();
 
     /**
      * Constructs the service with required dependencies.
      *
      * @param passwordEncoder     Encoder for securely storing passwords.
+     * @param users               Storage engine holding the user accounts.
+     * @param replicationLog      Log of mutations replicated to other nodes.
      */
-    public UserService(PasswordEncoder passwordEncoder) {
+    public UserService(PasswordEncoder passwordEncoder, UserStore users, ReplicationLog replicationLog) {
         this.passwordEncoder = passwordEncoder;
+        this.users = users;
+        this.replicationLog = replicationLog;
     }
 
     /**
-     * Returns all users
+     * Returns all users, as a point-in-time view that concurrent writes do not change
      */
     public Collection<UserDTO> getAllUsers() {
         return this.users.values();
@@ -44,10 +57,9 @@ public class UserService {
      * @return UserDTO
      */
     public UserDTO findByEmail(String email) {
-        for (var user : this.users.values()) {
-            if (user.email().equals(email)) {
-                return user;
-            }
+        var user = this.users.findByEmail(email);
+        if (user != null) {
+            return user;
         }
 
         throw new NotFoundException("User not found with email: " + email);
@@ -57,14 +69,19 @@ public class UserService {
      * Creates a new user
      */
     public UserDTO createUser(CreateUserRequest request) {
-        for (UserDTO user : this.users.values()) {
-            if (user.email().equals(request.email())) {
+        if (this.users.findByEmail(request.email()) != null) {
+            throw new AlreadyExistsException("user already exists");
+        }
+        var encoded = this.passwordEncoder.encode(request.password());
+        var user = new UserDTO(UUID.randomUUID(), request.name(), encoded, request.email(), request.age());
+        synchronized (this.writeLock) {
+            if (this.users.findByEmail(request.email()) != null) {
                 throw new AlreadyExistsException("user already exists");
             }
+            this.users.save(user);
+            this.searchIndex.add(user);
+            this.replicationLog.userSaved(user);
         }
-        var encoded = this.passwordEncoder.encode(request.password());
-        var user = new UserDTO(UUID.randomUUID(), request.name(), request.email(), encoded, request.age());
-        this.users.put(user.id(), user);
         return user;
     }
 
@@ -77,9 +94,82 @@ public class UserService {
 
     /**
      * Deletes a user
+     *
+     * @return True if a user with the given ID existed and was removed.
+     */
+    public boolean deleteUserById(UUID id) {
+        synchronized (this.writeLock) {
+            UserDTO removed = this.users.remove(id);
+            if (removed == null) {
+                return false;
+            }
+            this.searchIndex.remove(removed);
+            this.replicationLog.userDeleted(id);
+            return true;
+        }
+    }
+
+    /**
+     * Applies a user mutation replicated from another node, unless this node already has a newer one.
+     * When two nodes register the same email concurrently, the earlier registration wins everywhere
+     * and the later one is deleted.
+     *
+     * @param entry The replicated mutation.
+     */
+    void applyReplicated(ReplicationEntry entry) {
+        synchronized (this.writeLock) {
+            if (!this.replicationLog.isNewer(entry)) {
+                return;
+            }
+            if (entry.type() == ReplicationEntry.Type.USER_SAVED) {
+                UserDTO holder = this.users.findByEmail(entry.user().email());
+                if (holder != null && !holder.id().equals(entry.key())) {
+                    ReplicationEntry registered = this.replicationLog.latestUser(holder.id());
+                    if (registered == null || entry.isNewerThan(registered)) {
+                        return;
+                    }
+                    this.users.remove(holder.id());
+                    this.searchIndex.remove(holder);
+                    this.replicationLog.userDeleted(holder.id());
+                }
+            }
+            this.replicationLog.recordRemote(entry);
+            UserDTO removed = this.users.remove(entry.key());
+            if (removed != null) {
+                this.searchIndex.remove(removed);
+            }
+            if (entry.type() == ReplicationEntry.Type.USER_SAVED) {
+                this.users.save(entry.user());
+                this.searchIndex.add(entry.user());
+            }
+        }
+    }
+
+    /**
+     * Searches users by name prefix and age range using the in-memory indexes.
+     * Results are ordered by name when a prefix is given, and by age otherwise.
+     *
+     * @param namePrefix Case-insensitive name prefix, or null for any name.
+     * @param minAge     Inclusive lower age bound, or null for no lower bound.
+     * @param maxAge     Inclusive upper age bound, or null for no upper bound.
+     * @param limit      Maximum number of users to return, between 1 and {@value #MAX_SEARCH_LIMIT}.
+     * @return The matching users, at most {@code limit} of them.
+     * @throws BadRequestException if the limit or age range is invalid.
      */
-    public void deleteUserById(UUID id) {
-        this.users.remove(id);
+    public List<UserDTO> searchUsers(String namePrefix, Integer minAge, Integer maxAge, int limit) {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_SEARCH_LIMIT);
+        }
+        int min = minAge == null ? Integer.MIN_VALUE : minAge;
+        int max = maxAge == null ? Integer.MAX_VALUE : maxAge;
+        if (min > max) {
+            throw new BadRequestException("minAge must not be greater than maxAge");
+        }
+        return this.searchIndex.candidates(namePrefix, min, max)
+                .map(this.users::get)
+                .filter(user -> user != null && user.age() >= min && user.age() <= max)
+                .limit(limit)
+                .toList();
     }
 
 }
@@ -0,0 +1,57 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Storage engine behind {@link UserService}.
+ *
+ * Implementations look users up by ID and by email; uniqueness of emails is enforced
+ * by {@link UserService}, not by the store. Implementations must be safe for reads
+ * that run concurrently with writes.
+ */
+public interface UserStore {
+
+    /**
+     * Fetches a user by ID.
+     *
+     * @param id The user's ID.
+     * @return The user, or null if there is none.
+     */
+    UserDTO get(UUID id);
+
+    /**
+     * Fetches a user by email.
+     *
+     * @param email The user's email address.
+     * @return The user, or null if there is none.
+     */
+    UserDTO findByEmail(String email);
+
+    /**
+     * Inserts a user, replacing any existing user with the same ID.
+     *
+     * @param user The user to store.
+     */
+    void save(UserDTO user);
+
+    /**
+     * Removes a user by ID.
+     *
+     * @param id The user's ID.
+     * @return The removed user, or null if there was none.
+     */
+    UserDTO remove(UUID id);
+
+    /**
+     * Returns the number of stored users.
+     */
+    int size();
+
+    /**
+     * Returns a point-in-time view of all stored users that later writes do not change.
+     */
+    Collection<UserDTO> values();
+}
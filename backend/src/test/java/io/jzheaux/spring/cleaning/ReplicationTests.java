@@ -0,0 +1,178 @@
+package io.jzheaux.spring.cleaning;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs three application instances in separate JVMs on localhost, replicating to each other,
+ * and checks that users and refresh tokens created on one are usable on the others,
+ * including on an instance that restarts with empty state, and that an access token revoked
+ * on one is rejected by the others. Run with {@code ./gradlew integrationTest}.
+ */
+@Tag("integration")
+class ReplicationTests {
+
+    private static final String JWT_SECRET = "integration-test-signing-key-of-32-bytes";
+    private static final String REPLICATION_SECRET = "integration-test-replication-secret-32b";
+
+    private static final Duration STARTUP = Duration.ofSeconds(60);
+    private static final Duration CONVERGENCE = Duration.ofSeconds(15);
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final ObjectMapper json = new ObjectMapper();
+    private final List<Process> processes = new ArrayList<>();
+
+    private final int[] httpPorts = new int[3];
+    private final int[] replicationPorts = new int[3];
+
+    @AfterEach
+    void stopNodes() throws InterruptedException {
+        for (Process process : this.processes) {
+            process.destroy();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void nodesConvergeOnUsersAndRefreshTokens() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            this.httpPorts[i] = freePort();
+            this.replicationPorts[i] = freePort();
+        }
+        Process[] nodes = new Process[3];
+        for (int i = 0; i < 3; i++) {
+            nodes[i] = startNode(i);
+        }
+        for (int i = 0; i < 3; i++) {
+            awaitStarted(i);
+        }
+
+        post(0, "/auth/register", "{\"name\":\"Ada\",\"email\":\"ada@example.com\",\"password\":\"secret\",\"age\":36}");
+        JsonNode tokens = await(1, "/auth/login", "{\"email\":\"ada@example.com\",\"password\":\"secret\"}");
+        await(2, "/auth/refresh", "{\"refreshToken\":\"" + tokens.get("refreshToken").asText() + "\"}");
+
+        String bearer = "Bearer " + tokens.get("accessToken").asText();
+        assertThat(get(0, "/api/users/search", bearer).statusCode()).isEqualTo(200);
+        HttpResponse<String> logout = send(1, "/auth/logout", "{\"refreshToken\":\"" + tokens.get("refreshToken").asText() + "\"}", bearer);
+        assertThat(logout.statusCode()).isEqualTo(200);
+        awaitStatus(0, "/api/users/search", bearer, 403);
+        awaitStatus(2, "/api/users/search", bearer, 403);
+
+        nodes[2].destroy();
+        nodes[2].waitFor(10, TimeUnit.SECONDS);
+        post(1, "/auth/register", "{\"name\":\"Grace\",\"email\":\"grace@example.com\",\"password\":\"secret\",\"age\":45}");
+        nodes[2] = startNode(2);
+        awaitStarted(2);
+
+        await(2, "/auth/login", "{\"email\":\"ada@example.com\",\"password\":\"secret\"}");
+        await(2, "/auth/login", "{\"email\":\"grace@example.com\",\"password\":\"secret\"}");
+        HttpResponse<String> duplicate = post(2, "/auth/register",
+                "{\"name\":\"Ada\",\"email\":\"ada@example.com\",\"password\":\"other\",\"age\":36}");
+        assertThat(duplicate.statusCode()).isEqualTo(409);
+    }
+
+    private Process startNode(int index) throws IOException {
+        List<String> peers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            if (i != index) {
+                peers.add("localhost:" + this.replicationPorts[i]);
+            }
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Application.class.getName(),
+                "--server.port=" + this.httpPorts[index],
+                "--jwt.secret=" + JWT_SECRET,
+                "--replication.enabled=true",
+                "--replication.secret=" + REPLICATION_SECRET,
+                "--replication.port=" + this.replicationPorts[index],
+                "--replication.peers=" + String.join(",", peers))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(System.getProperty("java.io.tmpdir"), "replication-node-" + index + ".log")))
+                .start();
+        this.processes.add(process);
+        return process;
+    }
+
+    private void awaitStarted(int index) throws Exception {
+        long deadline = System.nanoTime() + STARTUP.toNanos();
+        while (true) {
+            try {
+                post(index, "/auth/login", "{\"email\":\"nobody@example.com\",\"password\":\"none\"}");
+                return;
+            } catch (IOException ex) {
+                assertThat(System.nanoTime()).as("node %d started", index).isLessThan(deadline);
+                Thread.sleep(250);
+            }
+        }
+    }
+
+    // retries until the node has caught up and answers 200
+    private JsonNode await(int index, String path, String body) throws Exception {
+        long deadline = System.nanoTime() + CONVERGENCE.toNanos();
+        HttpResponse<String> response = post(index, path, body);
+        while (response.statusCode() != 200 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            response = post(index, path, body);
+        }
+        assertThat(response.statusCode()).as("%s on node %d", path, index).isEqualTo(200);
+        return this.json.readTree(response.body());
+    }
+
+    // retries until the node answers with the expected status
+    private void awaitStatus(int index, String path, String authorization, int status) throws Exception {
+        long deadline = System.nanoTime() + CONVERGENCE.toNanos();
+        HttpResponse<String> response = get(index, path, authorization);
+        while (response.statusCode() != status && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            response = get(index, path, authorization);
+        }
+        assertThat(response.statusCode()).as("%s on node %d", path, index).isEqualTo(status);
+    }
+
+    private HttpResponse<String> post(int index, String path, String body) throws IOException, InterruptedException {
+        return send(index, path, body, null);
+    }
+
+    private HttpResponse<String> send(int index, String path, String body, String authorization) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + this.httpPorts[index] + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        return this.http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(int index, String path, String authorization) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + this.httpPorts[index] + path))
+                .header("Authorization", authorization)
+                .GET()
+                .build();
+        return this.http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
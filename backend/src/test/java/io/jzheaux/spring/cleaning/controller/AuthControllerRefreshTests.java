@@ -0,0 +1,149 @@
+package io.jzheaux.spring.cleaning.controller;
+
+import io.jzheaux.spring.cleaning.dto.AuthTokenDTO;
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.RefreshTokenDTO;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import io.jzheaux.spring.cleaning.exceptions.RefreshTokenException;
+import io.jzheaux.spring.cleaning.service.AccessTokenDenylist;
+import io.jzheaux.spring.cleaning.service.AuditLog;
+import io.jzheaux.spring.cleaning.service.JwtUtil;
+import io.jzheaux.spring.cleaning.service.MapUserStore;
+import io.jzheaux.spring.cleaning.service.PlainPasswordEncoder;
+import io.jzheaux.spring.cleaning.service.RefreshTokenService;
+import io.jzheaux.spring.cleaning.service.ReplicationLog;
+import io.jzheaux.spring.cleaning.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that concurrent {@code POST /auth/refresh} calls with the same refresh token share one verification.
+ */
+class AuthControllerRefreshTests {
+
+    private static final int CALLERS = 8;
+
+    private final ReplicationLog replicationLog = new ReplicationLog(false);
+    private final UserService users = new UserService(new PlainPasswordEncoder(), new MapUserStore(), this.replicationLog);
+    private final BlockingRefreshTokenService tokens = new BlockingRefreshTokenService(this.replicationLog);
+    private final JwtUtil jwt = new JwtUtil("test-only-signing-key-of-at-least-32-bytes",
+            new AccessTokenDenylist(Duration.ofMinutes(1), Duration.ofMinutes(15)), this.replicationLog);
+    private final AuthController controller = new AuthController(null, this.jwt, this.users, this.tokens, null,
+            new AuditLog(false, Path.of("unused"), 2, DataSize.ofKilobytes(1), AuditLog.OverflowPolicy.DROP));
+
+    @Test
+    void concurrentRefreshesShareOneAccessToken() throws Exception {
+        UserDTO user = this.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+        String refreshToken = this.tokens.create(user.id(), false);
+
+        List<Future<AuthTokenDTO>> outcomes = refreshConcurrently(refreshToken);
+        String accessToken = outcomes.get(0).get(5, TimeUnit.SECONDS).accessToken();
+        assertThat(this.jwt.extractEmail(accessToken)).isEqualTo("ada@example.com");
+        for (Future<AuthTokenDTO> outcome : outcomes) {
+            assertThat(outcome.get(5, TimeUnit.SECONDS).accessToken()).isEqualTo(accessToken);
+        }
+        assertThat(this.tokens.verifications.get()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentRefreshesShareOneFailure() throws Exception {
+        List<Future<AuthTokenDTO>> outcomes = refreshConcurrently("unknown");
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<AuthTokenDTO> outcome : outcomes) {
+            ExecutionException failure = (ExecutionException) catchThrowable(outcome);
+            failures.add(failure.getCause());
+        }
+        assertThat(failures.get(0)).isInstanceOf(RefreshTokenException.class);
+        assertThat(failures).allMatch(failure -> failure == failures.get(0));
+        assertThat(this.tokens.verifications.get()).isEqualTo(1);
+
+        // nothing is cached, so the next refresh verifies again
+        assertThatThrownBy(() -> refresh("unknown")).isInstanceOf(RefreshTokenException.class);
+        assertThat(this.tokens.verifications.get()).isEqualTo(2);
+    }
+
+    // the first refresh blocks inside its verification until every other caller is waiting on it
+    private List<Future<AuthTokenDTO>> refreshConcurrently(String refreshToken) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<AuthTokenDTO>> outcomes = new ArrayList<>();
+            List<Thread> waiting = new ArrayList<>();
+            outcomes.add(executor.submit(() -> refresh(refreshToken)));
+            assertThat(this.tokens.started.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 1; i < CALLERS; i++) {
+                outcomes.add(executor.submit(() -> {
+                    synchronized (waiting) {
+                        waiting.add(Thread.currentThread());
+                    }
+                    return refresh(refreshToken);
+                }));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!allWaiting(waiting)) {
+                assertThat(System.nanoTime()).as("callers blocked").isLessThan(deadline);
+                Thread.sleep(10);
+            }
+            this.tokens.release.countDown();
+            return outcomes;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private AuthTokenDTO refresh(String refreshToken) {
+        return this.controller.refresh(new RefreshTokenDTO(null, refreshToken, null)).getBody();
+    }
+
+    private static boolean allWaiting(List<Thread> threads) {
+        synchronized (threads) {
+            return threads.size() == CALLERS - 1 && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING);
+        }
+    }
+
+    private static Throwable catchThrowable(Future<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException ex) {
+            return ex;
+        }
+    }
+
+    private static final class BlockingRefreshTokenService extends RefreshTokenService {
+        private final AtomicInteger verifications = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingRefreshTokenService(ReplicationLog replicationLog) {
+            super(replicationLog);
+        }
+
+        @Override
+        public UUID verifyAndGetUserId(String token) {
+            this.verifications.incrementAndGet();
+            this.started.countDown();
+            try {
+                this.release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return super.verifyAndGetUserId(token);
+        }
+    }
+}
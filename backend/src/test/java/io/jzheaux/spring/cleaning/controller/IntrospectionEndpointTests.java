@@ -0,0 +1,94 @@
+package io.jzheaux.spring.cleaning.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jzheaux.spring.cleaning.dto.AuthTokenDTO;
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.IntrospectionRequest;
+import io.jzheaux.spring.cleaning.dto.TokenIntrospectionDTO;
+import io.jzheaux.spring.cleaning.service.TokenIntrospectionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks {@code POST /auth/introspect}, using the client secret from the test properties.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class IntrospectionEndpointTests {
+
+    private static final String CLIENT_SECRET = "test-gateway-secret";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    void requiresTheClientSecret() throws Exception {
+        AuthTokenDTO tokens = register();
+        String body = this.json.writeValueAsString(new IntrospectionRequest(List.of(tokens.accessToken())));
+        this.mvc.perform(post("/auth/introspect").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isUnauthorized());
+        this.mvc.perform(post("/auth/introspect").contentType(MediaType.APPLICATION_JSON).content(body)
+                        .header(TokenIntrospectionService.CLIENT_SECRET_HEADER, "wrong"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void reportsEachTokenInOrder() throws Exception {
+        AuthTokenDTO tokens = register();
+        List<TokenIntrospectionDTO> results = introspect(tokens.accessToken(), "not-a-token", tokens.refreshToken());
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).active()).isTrue();
+        assertThat(results.get(0).tokenType()).isEqualTo("access_token");
+        assertThat(results.get(1).active()).isFalse();
+        assertThat(results.get(2).active()).isTrue();
+        assertThat(results.get(2).tokenType()).isEqualTo("refresh_token");
+        assertThat(results.get(2).userId()).isEqualTo(results.get(0).userId());
+    }
+
+    @Test
+    void tokensOfDeletedUsersAreInactive() throws Exception {
+        AuthTokenDTO tokens = register();
+        UUID id = introspect(tokens.accessToken()).get(0).userId();
+        this.mvc.perform(delete("/api/users/" + id).header(HttpHeaders.AUTHORIZATION, "Bearer " + tokens.accessToken()))
+                .andExpect(status().isNoContent());
+
+        assertThat(introspect(tokens.accessToken(), tokens.refreshToken()))
+                .allMatch(result -> !result.active());
+    }
+
+    private AuthTokenDTO register() throws Exception {
+        String name = "introspected-" + UUID.randomUUID();
+        String body = this.mvc.perform(post("/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.json.writeValueAsString(new CreateUserRequest(name, name + "@example.com", "password", 30))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return this.json.readValue(body, AuthTokenDTO.class);
+    }
+
+    private List<TokenIntrospectionDTO> introspect(String... tokens) throws Exception {
+        String body = this.mvc.perform(post("/auth/introspect")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(TokenIntrospectionService.CLIENT_SECRET_HEADER, CLIENT_SECRET)
+                        .content(this.json.writeValueAsString(new IntrospectionRequest(List.of(tokens)))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return List.of(this.json.readValue(body, TokenIntrospectionDTO[].class));
+    }
+}
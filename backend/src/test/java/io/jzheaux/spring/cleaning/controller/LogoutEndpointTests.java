@@ -0,0 +1,99 @@
+package io.jzheaux.spring.cleaning.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jzheaux.spring.cleaning.dto.AuthTokenDTO;
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.IntrospectionRequest;
+import io.jzheaux.spring.cleaning.dto.TokenIntrospectionDTO;
+import io.jzheaux.spring.cleaning.service.TokenIntrospectionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that {@code POST /auth/logout} revokes the access token it is called with.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class LogoutEndpointTests {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    void logoutRevokesTheBearerToken() throws Exception {
+        AuthTokenDTO tokens = register();
+        String bearer = "Bearer " + tokens.accessToken();
+        this.mvc.perform(get("/api/users/search").header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk());
+        assertThat(introspect(tokens.accessToken()).active()).isTrue();
+
+        this.mvc.perform(post("/auth/logout")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + tokens.refreshToken() + "\"}"))
+                .andExpect(status().isOk());
+
+        this.mvc.perform(get("/api/users/search").header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isForbidden());
+        assertThat(introspect(tokens.accessToken()).active()).isFalse();
+        assertThat(introspect(tokens.refreshToken()).active()).isFalse();
+    }
+
+    @Test
+    void logoutLeavesOtherTokensOfTheUserActive() throws Exception {
+        AuthTokenDTO first = register();
+        String email = introspect(first.accessToken()).sub();
+        String body = this.mvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"password\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        AuthTokenDTO second = this.json.readValue(body, AuthTokenDTO.class);
+
+        this.mvc.perform(post("/auth/logout")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + first.accessToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + first.refreshToken() + "\"}"))
+                .andExpect(status().isOk());
+
+        this.mvc.perform(get("/api/users/search").header(HttpHeaders.AUTHORIZATION, "Bearer " + second.accessToken()))
+                .andExpect(status().isOk());
+        assertThat(introspect(second.accessToken()).active()).isTrue();
+    }
+
+    private AuthTokenDTO register() throws Exception {
+        String name = "logout-" + UUID.randomUUID();
+        String body = this.mvc.perform(post("/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.json.writeValueAsString(new CreateUserRequest(name, name + "@example.com", "password", 30))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return this.json.readValue(body, AuthTokenDTO.class);
+    }
+
+    private TokenIntrospectionDTO introspect(String token) throws Exception {
+        String body = this.mvc.perform(post("/auth/introspect")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(TokenIntrospectionService.CLIENT_SECRET_HEADER, "test-gateway-secret")
+                        .content(this.json.writeValueAsString(new IntrospectionRequest(List.of(token)))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return this.json.readValue(body, TokenIntrospectionDTO[].class)[0];
+    }
+}
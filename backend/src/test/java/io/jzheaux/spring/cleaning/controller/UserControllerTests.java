@@ -0,0 +1,56 @@
+package io.jzheaux.spring.cleaning.controller;
+
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import io.jzheaux.spring.cleaning.service.AuditEventType;
+import io.jzheaux.spring.cleaning.service.AuditLog;
+import io.jzheaux.spring.cleaning.service.MapUserStore;
+import io.jzheaux.spring.cleaning.service.PlainPasswordEncoder;
+import io.jzheaux.spring.cleaning.service.ReplicationLog;
+import io.jzheaux.spring.cleaning.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks which user deletions {@link UserController} records in the audit log.
+ */
+class UserControllerTests {
+
+    private final RecordingAuditLog auditLog = new RecordingAuditLog();
+    private final UserService users = new UserService(new PlainPasswordEncoder(), new MapUserStore(), new ReplicationLog(false));
+    private final UserController controller = new UserController(this.users, this.auditLog);
+    private final Principal admin = new UsernamePasswordAuthenticationToken("admin@example.com", null);
+
+    @Test
+    void auditsOnlyDeletionsThatRemovedAUser() {
+        UserDTO user = this.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+
+        assertThat(this.controller.deleteUserById(user.id(), this.admin).getStatusCode().value()).isEqualTo(204);
+        assertThat(this.controller.deleteUserById(user.id(), this.admin).getStatusCode().value()).isEqualTo(204);
+        assertThat(this.controller.deleteUserById(UUID.randomUUID(), this.admin).getStatusCode().value()).isEqualTo(204);
+
+        assertThat(this.auditLog.events).containsExactly(AuditEventType.USER_DELETE + " " + user.id() + " admin@example.com");
+    }
+
+    private static final class RecordingAuditLog extends AuditLog {
+        private final List<String> events = new ArrayList<>();
+
+        RecordingAuditLog() {
+            super(false, Path.of("unused"), 2, DataSize.ofKilobytes(1), OverflowPolicy.DROP);
+        }
+
+        @Override
+        public void record(AuditEventType type, UUID userId, String subject) {
+            this.events.add(type + " " + userId + " " + subject);
+        }
+    }
+}
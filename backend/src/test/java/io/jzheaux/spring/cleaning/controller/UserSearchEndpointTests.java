@@ -0,0 +1,119 @@
+package io.jzheaux.spring.cleaning.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jzheaux.spring.cleaning.dto.AuthTokenDTO;
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks {@code GET /api/users/search} end to end. Every test registers its own users under a
+ * unique name prefix, since the application context, and its users, are shared between tests.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserSearchEndpointTests {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper json;
+
+    private final String prefix = "s" + UUID.randomUUID().toString().substring(0, 8);
+
+    private String accessToken;
+
+    @BeforeEach
+    void register() throws Exception {
+        this.accessToken = register("alice", 30);
+        register("alfred", 90);
+        register("albert", 45);
+        register("bob", 30);
+    }
+
+    @Test
+    void searchByPrefix() throws Exception {
+        assertThat(names(search().param("name", this.prefix.toUpperCase() + "AL")))
+                .containsExactly(this.prefix + "albert", this.prefix + "alfred", this.prefix + "alice");
+    }
+
+    @Test
+    void searchByAgeRange() throws Exception {
+        List<UserDTO> users = search(search().param("minAge", "40").param("maxAge", "90").param("limit", "1000"));
+        assertThat(users).allMatch(user -> user.age() >= 40 && user.age() <= 90);
+        assertThat(users.stream().map(UserDTO::name).toList())
+                .contains(this.prefix + "albert", this.prefix + "alfred")
+                .doesNotContain(this.prefix + "alice", this.prefix + "bob");
+    }
+
+    @Test
+    void searchByPrefixAndAgeRange() throws Exception {
+        assertThat(names(search().param("name", this.prefix + "al").param("minAge", "40")))
+                .containsExactly(this.prefix + "albert", this.prefix + "alfred");
+        assertThat(names(search().param("name", this.prefix).param("maxAge", "30")))
+                .containsExactly(this.prefix + "alice", this.prefix + "bob");
+    }
+
+    @Test
+    void searchHonoursLimit() throws Exception {
+        assertThat(names(search().param("name", this.prefix).param("limit", "2")))
+                .containsExactly(this.prefix + "albert", this.prefix + "alfred");
+        this.mvc.perform(search().param("limit", "0")).andExpect(status().isBadRequest());
+        this.mvc.perform(search().param("minAge", "50").param("maxAge", "40")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void deletedUsersAreNoLongerFound() throws Exception {
+        UserDTO alfred = search(search().param("name", this.prefix + "alf")).get(0);
+        this.mvc.perform(delete("/api/users/" + alfred.id()).header(HttpHeaders.AUTHORIZATION, "Bearer " + this.accessToken))
+                .andExpect(status().isNoContent());
+
+        assertThat(names(search().param("name", this.prefix + "al")))
+                .containsExactly(this.prefix + "albert", this.prefix + "alice");
+        assertThat(names(search().param("name", this.prefix).param("minAge", "90"))).isEmpty();
+    }
+
+    private String register(String name, int age) throws Exception {
+        CreateUserRequest request = new CreateUserRequest(this.prefix + name, this.prefix + name + "@example.com", "password", age);
+        String body = this.mvc.perform(post("/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.json.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return this.json.readValue(body, AuthTokenDTO.class).accessToken();
+    }
+
+    private MockHttpServletRequestBuilder search() {
+        return get("/api/users/search").header(HttpHeaders.AUTHORIZATION, "Bearer " + this.accessToken);
+    }
+
+    private List<UserDTO> search(MockHttpServletRequestBuilder request) throws Exception {
+        String body = this.mvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Arrays.asList(this.json.readValue(body, UserDTO[].class));
+    }
+
+    private List<String> names(MockHttpServletRequestBuilder request) throws Exception {
+        return search(request).stream().map(UserDTO::name).toList();
+    }
+}
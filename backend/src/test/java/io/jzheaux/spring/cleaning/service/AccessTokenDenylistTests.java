@@ -0,0 +1,110 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks {@link AccessTokenDenylist} with one-minute buckets and a fifteen-minute horizon, which gives 16 bucket slots.
+ */
+class AccessTokenDenylistTests {
+
+    private static final Duration BUCKET_WIDTH = Duration.ofMinutes(1);
+    private static final Duration HORIZON = Duration.ofMinutes(15);
+    private static final int SLOTS = 16;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2030-01-01T00:00:00Z"));
+    private final AccessTokenDenylist denylist = new AccessTokenDenylist(BUCKET_WIDTH, HORIZON, this.clock);
+
+    @Test
+    void revokedTokensAreFoundAndOthersAreNot() {
+        Instant expiry = this.clock.instant().plus(Duration.ofMinutes(10));
+        this.denylist.revoke("revoked", expiry);
+        assertThat(this.denylist.isRevoked("revoked", expiry)).isTrue();
+        assertThat(this.denylist.isRevoked("other", expiry)).isFalse();
+        assertThat(this.denylist.isRevoked(null, expiry)).isFalse();
+    }
+
+    @Test
+    void expiredTokensAreNotRecorded() {
+        Instant expiry = this.clock.instant().minusSeconds(1);
+        this.denylist.revoke("expired", expiry);
+        assertThat(this.denylist.isRevoked("expired", expiry)).isFalse();
+    }
+
+    @Test
+    void bucketSlotIsReusedOnceItsTokensHaveExpired() {
+        Instant first = this.clock.instant().plus(Duration.ofMinutes(5));
+        this.denylist.revoke("first", first);
+
+        // once the first token has expired, a token a full cycle of slots later lands in the same slot
+        this.clock.advance(Duration.ofMinutes(10));
+        Instant second = first.plus(BUCKET_WIDTH.multipliedBy(SLOTS));
+        this.denylist.revoke("second", second);
+
+        assertThat(this.denylist.isRevoked("second", second)).isTrue();
+        assertThat(this.denylist.isRevoked("first", first)).isFalse();
+    }
+
+    @Test
+    void revocationsWithAStaleClockDoNotReplaceANewerBucket() {
+        Instant first = this.clock.instant().plus(Duration.ofMinutes(5));
+        Instant second = first.plus(BUCKET_WIDTH.multipliedBy(SLOTS));
+        this.clock.advance(Duration.ofMinutes(10));
+        this.denylist.revoke("second", second);
+
+        // a revocation racing from a thread that read the clock before the first token expired
+        this.clock.advance(Duration.ofMinutes(-10));
+        this.denylist.revoke("first", first);
+
+        assertThat(this.denylist.isRevoked("second", second)).isTrue();
+    }
+
+    @Test
+    void tokensBeyondTheHorizonGoToTheOverflowMap() {
+        Instant late = this.clock.instant().plus(Duration.ofHours(1));
+        this.denylist.revoke("late", late);
+        assertThat(this.denylist.isRevoked("late", late)).isTrue();
+        assertThat(this.denylist.isRevoked("other", late)).isFalse();
+
+        // expired overflow entries are dropped when the next one is added
+        this.clock.advance(Duration.ofHours(2));
+        Instant later = this.clock.instant().plus(Duration.ofHours(1));
+        this.denylist.revoke("later", later);
+        assertThat(this.denylist.isRevoked("later", later)).isTrue();
+        assertThat(this.denylist.isRevoked("late", late)).isFalse();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            this.now = this.now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.now;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures how long request threads spend publishing to the {@link AuditLog}. Run with {@code ./gradlew performanceTest}.
+ */
+@Tag("performance")
+class AuditLogBenchmarkTests {
+
+    private static final int THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 200_000;
+    private static final long PAUSE_NANOS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordAddsNegligibleLatencyAndLosesNoEvents() throws Exception {
+        AuditLog auditLog = new AuditLog(true, this.directory, 65_536, DataSize.ofMegabytes(64), AuditLog.OverflowPolicy.BLOCK);
+        auditLog.start();
+        UUID userId = UUID.randomUUID();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(() -> publish(auditLog, userId)));
+        }
+        long[] latencies = new long[THREADS * EVENTS_PER_THREAD];
+        int i = 0;
+        for (Future<long[]> result : results) {
+            for (long latency : result.get()) {
+                latencies[i++] = latency;
+            }
+        }
+        executor.shutdown();
+        auditLog.close();
+
+        Arrays.sort(latencies);
+        long p50 = latencies[latencies.length / 2];
+        long p99 = latencies[(int) (latencies.length * 0.99)];
+        System.out.printf("audit record latency: p50=%dns p99=%dns%n", p50, p99);
+        assertThat(p50).isLessThan(2_000);
+        assertThat(auditLog.droppedEvents()).isZero();
+        assertThat(countLines()).isEqualTo((long) THREADS * EVENTS_PER_THREAD);
+    }
+
+    // publishes at a steady pace, as request threads would, timing each call
+    private static long[] publish(AuditLog auditLog, UUID userId) {
+        long[] latencies = new long[EVENTS_PER_THREAD];
+        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+            long start = System.nanoTime();
+            auditLog.record(AuditEventType.LOGIN_SUCCESS, userId, "user@example.com");
+            latencies[i] = System.nanoTime() - start;
+            while (System.nanoTime() - start < PAUSE_NANOS) {
+                Thread.onSpinWait();
+            }
+        }
+        return latencies;
+    }
+
+    private long countLines() throws Exception {
+        long lines = 0;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : files.toList()) {
+                try (Stream<String> fileLines = Files.lines(file)) {
+                    lines += fileLines.count();
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,53 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that the {@link AuditLog} writer survives a failed publish and rotates files left over from an earlier run.
+ */
+class AuditLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void eventsAfterAFailedPublishAreStillWritten() throws Exception {
+        AuditLog auditLog = new AuditLog(true, this.directory, 16, DataSize.ofMegabytes(1), AuditLog.OverflowPolicy.DROP);
+        auditLog.start();
+        assertThatThrownBy(() -> auditLog.record(null, UUID.randomUUID(), "user@example.com"))
+                .isInstanceOf(NullPointerException.class);
+        auditLog.record(AuditEventType.LOGIN_SUCCESS, UUID.randomUUID(), "user@example.com");
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(this.directory.resolve("audit.ndjson"));
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).contains("\"type\":\"LOGIN_SUCCESS\"");
+    }
+
+    @Test
+    void oversizedFileFromAnEarlierRunIsRotatedBeforeWriting() throws Exception {
+        Files.write(this.directory.resolve("audit.ndjson"), new byte[2048]);
+        AuditLog auditLog = new AuditLog(true, this.directory, 16, DataSize.ofKilobytes(1), AuditLog.OverflowPolicy.DROP);
+        auditLog.start();
+        auditLog.record(AuditEventType.LOGIN_SUCCESS, UUID.randomUUID(), "user@example.com");
+        auditLog.close();
+
+        assertThat(Files.readAllLines(this.directory.resolve("audit.ndjson"))).hasSize(1);
+        try (Stream<Path> files = Files.list(this.directory)) {
+            List<Path> rotated = files.filter(file -> !file.endsWith("audit.ndjson")).toList();
+            assertThat(rotated).hasSize(1);
+            assertThat(Files.size(rotated.get(0))).isEqualTo(2048L);
+        }
+    }
+}
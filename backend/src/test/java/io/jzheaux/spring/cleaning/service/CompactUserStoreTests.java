@@ -0,0 +1,122 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that {@link CompactUserStore} behaves like {@link MapUserStore}, including across
+ * table rebuilds and page compactions.
+ */
+class CompactUserStoreTests {
+
+    // large enough that replacing users leaves several pages of garbage, which forces compactions
+    private static final String PASSWORD = "$2a$10$" + "x".repeat(2_000);
+
+    private final MapUserStore expected = new MapUserStore();
+    private final CompactUserStore actual = new CompactUserStore();
+
+    @Test
+    void saveGetAndFindByEmail() {
+        UserDTO user = user(UUID.randomUUID(), "Ada", "ada@example.com", 36);
+        save(user);
+        assertThat(this.actual.get(user.id())).isEqualTo(user);
+        assertThat(this.actual.findByEmail("ada@example.com")).isEqualTo(user);
+        assertThat(this.actual.get(UUID.randomUUID())).isNull();
+        assertThat(this.actual.findByEmail("grace@example.com")).isNull();
+        assertThat(this.actual.findByEmail(null)).isNull();
+        assertThat(this.actual.size()).isEqualTo(1);
+    }
+
+    @Test
+    void replaceMovesTheEmail() {
+        UUID id = UUID.randomUUID();
+        save(user(id, "Ada", "ada@example.com", 36));
+        UserDTO renamed = user(id, "Ada Lovelace", "lovelace@example.com", 37);
+        save(renamed);
+        assertThat(this.actual.get(id)).isEqualTo(renamed);
+        assertThat(this.actual.findByEmail("lovelace@example.com")).isEqualTo(renamed);
+        assertThat(this.actual.findByEmail("ada@example.com")).isNull();
+        assertThat(this.actual.size()).isEqualTo(1);
+    }
+
+    @Test
+    void nullFieldsRoundTrip() {
+        UserDTO user = new UserDTO(UUID.randomUUID(), null, null, null, -1);
+        save(user);
+        assertThat(this.actual.get(user.id())).isEqualTo(user);
+        assertThat(this.actual.values()).containsExactly(user);
+    }
+
+    @Test
+    void removeReturnsTheRemovedUser() {
+        UserDTO user = user(UUID.randomUUID(), "Ada", "ada@example.com", 36);
+        save(user);
+        assertThat(this.actual.remove(user.id())).isEqualTo(this.expected.remove(user.id())).isEqualTo(user);
+        assertThat(this.actual.remove(user.id())).isNull();
+        assertThat(this.actual.get(user.id())).isNull();
+        assertThat(this.actual.findByEmail("ada@example.com")).isNull();
+        assertThat(this.actual.size()).isZero();
+        assertThat(this.actual.values()).isEmpty();
+    }
+
+    @Test
+    void matchesMapStoreAcrossRebuildsAndCompactions() {
+        Random random = new Random(42);
+        List<UUID> ids = new ArrayList<>();
+        for (int step = 0; step < 20_000; step++) {
+            int operation = random.nextInt(10);
+            if (ids.isEmpty() || operation < 4) {
+                UUID id = UUID.randomUUID();
+                ids.add(id);
+                save(user(id, "user " + step, "user" + step + "@example.com", random.nextInt(100)));
+            } else if (operation < 8) {
+                UUID id = ids.get(random.nextInt(ids.size()));
+                save(user(id, "renamed " + step, "renamed" + step + "@example.com", random.nextInt(100)));
+            } else {
+                UUID id = ids.remove(random.nextInt(ids.size()));
+                assertThat(this.actual.remove(id)).isEqualTo(this.expected.remove(id));
+            }
+            if (step % 1_000 == 0) {
+                assertSameContents();
+            }
+        }
+        assertSameContents();
+
+        // removing most users leaves tombstones behind, which later inserts have to reuse correctly
+        while (ids.size() > 10) {
+            UUID id = ids.remove(ids.size() - 1);
+            assertThat(this.actual.remove(id)).isEqualTo(this.expected.remove(id));
+        }
+        for (int i = 0; i < 100; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            save(user(id, "late " + i, "late" + i + "@example.com", i));
+        }
+        assertSameContents();
+    }
+
+    private void save(UserDTO user) {
+        this.expected.save(user);
+        this.actual.save(user);
+    }
+
+    private void assertSameContents() {
+        assertThat(this.actual.size()).isEqualTo(this.expected.size());
+        assertThat(this.actual.values()).containsExactlyInAnyOrderElementsOf(this.expected.values());
+        for (UserDTO user : this.expected.values()) {
+            assertThat(this.actual.get(user.id())).isEqualTo(user);
+            assertThat(this.actual.findByEmail(user.email())).isEqualTo(user);
+        }
+    }
+
+    private static UserDTO user(UUID id, String name, String email, int age) {
+        return new UserDTO(id, name, PASSWORD, email, age);
+    }
+}
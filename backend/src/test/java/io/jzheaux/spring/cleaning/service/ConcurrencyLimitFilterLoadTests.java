@@ -0,0 +1,140 @@
+package io.jzheaux.spring.cleaning.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Floods {@code /auth/login} on a running server with more closed-loop clients than the configured
+ * {@code /auth} limit allows, while a few clients call {@code /api}, and checks that the application's
+ * filter chain sheds the excess logins with fast 503s while the API calls keep succeeding.
+ * Run with {@code ./gradlew performanceTest}.
+ */
+@Tag("performance")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ConcurrencyLimitFilterLoadTests {
+
+    // above concurrency.auth.max-limit, so that the /auth limit has to shed
+    private static final int LOGIN_CLIENTS = 80;
+    private static final int API_CLIENTS = 4;
+    private static final long MEASURE_MILLIS = 5_000;
+    private static final long MAX_SHED_MILLIS = 250;
+    private static final long MAX_API_MILLIS = 1_000;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final ObjectMapper json = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void excessLoginsAreShedWhileApiCallsSucceed() throws Exception {
+        HttpResponse<String> registered = post("/auth/register",
+                "{\"name\":\"Ada\",\"email\":\"ada@example.com\",\"password\":\"secret\",\"age\":36}");
+        assertThat(registered.statusCode()).isEqualTo(200);
+        String bearer = "Bearer " + this.json.readTree(registered.body()).get("accessToken").asText();
+
+        LongAdder logins = new LongAdder();
+        LongAdder shed = new LongAdder();
+        List<Long> shedMillis = Collections.synchronizedList(new ArrayList<>());
+        List<Long> apiMillis = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> apiStatuses = Collections.synchronizedList(new ArrayList<>());
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MEASURE_MILLIS);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < LOGIN_CLIENTS; c++) {
+            threads.add(client(until, () -> {
+                long start = System.nanoTime();
+                int status = post("/auth/login", "{\"email\":\"ada@example.com\",\"password\":\"secret\"}").statusCode();
+                if (status == 503) {
+                    shed.increment();
+                    shedMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } else {
+                    logins.increment();
+                }
+            }));
+        }
+        for (int c = 0; c < API_CLIENTS; c++) {
+            threads.add(client(until, () -> {
+                long start = System.nanoTime();
+                apiStatuses.add(get("/api/users/search", bearer).statusCode());
+                apiMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("logins=%d shed=%d shed p99=%dms api calls=%d api p99=%dms%n",
+                logins.sum(), shed.sum(), p99(shedMillis), apiMillis.size(), p99(apiMillis));
+        assertThat(logins.sum()).isPositive();
+        assertThat(shed.sum()).isPositive();
+        assertThat(p99(shedMillis)).isLessThanOrEqualTo(MAX_SHED_MILLIS);
+        assertThat(apiStatuses).isNotEmpty().allMatch(status -> status == 200);
+        assertThat(p99(apiMillis)).isLessThanOrEqualTo(MAX_API_MILLIS);
+    }
+
+    private static Thread client(long until, Call call) {
+        Thread thread = new Thread(() -> {
+            while (System.nanoTime() < until) {
+                try {
+                    call.run();
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static long p99(List<Long> millis) {
+        List<Long> sorted;
+        synchronized (millis) {
+            sorted = new ArrayList<>(millis);
+        }
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(sorted);
+        return sorted.get((int) (sorted.size() * 0.99));
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + this.port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return this.http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path, String authorization) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + this.port + path))
+                .header("Authorization", authorization)
+                .GET()
+                .build();
+        return this.http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private interface Call {
+        void run() throws IOException, InterruptedException;
+    }
+}
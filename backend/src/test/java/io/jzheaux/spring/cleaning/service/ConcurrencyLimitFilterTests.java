@@ -0,0 +1,49 @@
+package io.jzheaux.spring.cleaning.service;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.http.HttpServlet;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.FilterChainProxy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that requests shed by the {@link ConcurrencyLimitFilter} in the application's security filter chain
+ * are answered with CORS headers.
+ */
+@SpringBootTest
+class ConcurrencyLimitFilterTests {
+
+    @Autowired
+    private FilterChainProxy filterChainProxy;
+
+    @Test
+    void shedResponsesCarryCorsHeaders() throws Exception {
+        AdaptiveConcurrencyLimit saturated = new AdaptiveConcurrencyLimit(1, 1, 1);
+        assertThat(saturated.tryAcquire()).isTrue();
+        ConcurrencyLimitFilter limiter = new ConcurrencyLimitFilter(saturated, saturated);
+
+        // the application's filters, in order, with its limiter swapped for one that sheds every request
+        List<Filter> filters = new ArrayList<>(this.filterChainProxy.getFilterChains().get(0).getFilters());
+        assertThat(filters).anyMatch(filter -> filter instanceof ConcurrencyLimitFilter);
+        filters.replaceAll(filter -> filter instanceof ConcurrencyLimitFilter ? limiter : filter);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/search");
+        request.addHeader(HttpHeaders.ORIGIN, "http://localhost:5173");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new MockFilterChain(new HttpServlet() { }, filters.toArray(Filter[]::new)).doFilter(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN)).isEqualTo("http://localhost:5173");
+        assertThat(response.getHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS)).isEqualTo("true");
+    }
+}
@@ -0,0 +1,104 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives an {@link AdaptiveConcurrencyLimit} with closed-loop clients against a simulated server whose
+ * latency grows once more requests are in flight than it has capacity for, and compares goodput
+ * (responses within the deadline) with and without the limit. This covers the limit's algorithm only;
+ * {@link ConcurrencyLimitFilterLoadTests} puts load through the application's filter chain.
+ * Run with {@code ./gradlew performanceTest}.
+ */
+@Tag("performance")
+class ConcurrencyLimitLoadTests {
+
+    private static final int CAPACITY = 8;
+    private static final long SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long DEADLINE_NANOS = TimeUnit.MILLISECONDS.toNanos(60);
+    private static final long REJECTED_BACKOFF_MILLIS = 5;
+    private static final long WARMUP_MILLIS = 2_000;
+    private static final long MEASURE_MILLIS = 3_000;
+
+    @Test
+    void goodputHoldsSteadyAsOfferedLoadPassesCapacity() throws Exception {
+        double atCapacity = 0;
+        for (int clients : new int[] { CAPACITY, 2 * CAPACITY, 4 * CAPACITY, 8 * CAPACITY }) {
+            double limited = run(clients, new AdaptiveConcurrencyLimit(CAPACITY * 4, 1, CAPACITY * 16));
+            double unlimited = run(clients, null);
+            System.out.printf("clients=%d goodput limited=%.0f/s unlimited=%.0f/s%n", clients, limited, unlimited);
+            if (clients == CAPACITY) {
+                atCapacity = limited;
+            } else {
+                assertThat(limited).isGreaterThanOrEqualTo(atCapacity * 0.7);
+            }
+        }
+    }
+
+    private static double run(int clients, AdaptiveConcurrencyLimit limit) throws InterruptedException {
+        SimulatedServer server = new SimulatedServer();
+        LongAdder good = new LongAdder();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+        long measureUntil = measureFrom + TimeUnit.MILLISECONDS.toNanos(MEASURE_MILLIS);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread client = new Thread(() -> {
+                while (System.nanoTime() < measureUntil) {
+                    if (limit != null && !limit.tryAcquire()) {
+                        sleep(REJECTED_BACKOFF_MILLIS);
+                        continue;
+                    }
+                    long requestStart = System.nanoTime();
+                    server.handle();
+                    long latency = System.nanoTime() - requestStart;
+                    if (limit != null) {
+                        limit.release(latency);
+                    }
+                    if (latency <= DEADLINE_NANOS && requestStart >= measureFrom) {
+                        good.increment();
+                    }
+                }
+            });
+            client.start();
+            threads.add(client);
+        }
+        for (Thread client : threads) {
+            client.join();
+        }
+        return good.sum() * 1000.0 / MEASURE_MILLIS;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // shares its capacity among everything in flight, so each request slows down past CAPACITY
+    private static class SimulatedServer {
+        private final AtomicInteger active = new AtomicInteger();
+
+        void handle() {
+            int concurrent = this.active.incrementAndGet();
+            try {
+                long nanos = SERVICE_NANOS * Math.max(CAPACITY, concurrent) / CAPACITY;
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.active.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks {@link MyUserDetailsService}.
+ */
+class MyUserDetailsServiceTests {
+
+    private final UserService users = new UserService(new PlainPasswordEncoder(), new MapUserStore(), new ReplicationLog(false));
+    private final MyUserDetailsService userDetails = new MyUserDetailsService(this.users);
+
+    @Test
+    void loadsUsersByEmail() {
+        this.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+        assertThat(this.userDetails.loadUserByUsername("ada@example.com").getUsername()).isEqualTo("ada@example.com");
+    }
+
+    @Test
+    void unknownAndNullEmailsAreNotFound() {
+        assertThatThrownBy(() -> this.userDetails.loadUserByUsername("nobody@example.com"))
+                .isInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> this.userDetails.loadUserByUsername(null))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+}
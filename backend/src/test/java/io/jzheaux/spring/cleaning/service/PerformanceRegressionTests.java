@@ -0,0 +1,220 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the latency scaling and allocation of hot {@link UserService} and {@link RefreshTokenService}
+ * operations. Run with {@code ./gradlew performanceTest}.
+ *
+ * Each data size is seeded through the services themselves, once for every {@link UserStore}, then every
+ * operation is timed at that size. The scaling exponent is the slope of log(latency per operation) over log(data size): about 0 for a
+ * hash lookup and about 1 for a scan, which makes a workload of n operations quadratic. Allocation per
+ * operation is measured with {@link com.sun.management.ThreadMXBean} on the largest data size. The
+ * budgets for both are in {@code performance-budgets.properties}, per store and operation.
+ */
+@Tag("performance")
+class PerformanceRegressionTests {
+
+    private static final Map<String, Supplier<UserStore>> STORES = Map.of(
+            "map", MapUserStore::new,
+            "compact", CompactUserStore::new);
+    private static final String[] MEASURED = { "findByEmail", "getUserById", "searchUsers", "verifyAndGetUserId", "createRefreshToken" };
+    private static final int[] SIZES = { 1_000, 10_000, 100_000, 1_000_000 };
+    private static final int OPERATIONS = 20_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 7;
+    private static final long ROUND_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final Map<String, double[]> nanosPerOperation = new LinkedHashMap<>();
+    private static final Map<String, Double> bytesPerOperation = new LinkedHashMap<>();
+    private static final Properties budgets = new Properties();
+
+    // keeps results alive so the JIT can't drop the measured calls
+    private static long sink;
+
+    @BeforeAll
+    static void measure() throws Exception {
+        try (InputStream in = PerformanceRegressionTests.class.getResourceAsStream("/performance-budgets.properties")) {
+            budgets.load(in);
+        }
+        for (Map.Entry<String, Supplier<UserStore>> store : STORES.entrySet()) {
+            for (int s = 0; s < SIZES.length; s++) {
+                Seed seed = new Seed(SIZES[s], store.getValue().get());
+                Map<String, Workload> workloads = seed.workloads();
+                for (Map.Entry<String, Workload> workload : workloads.entrySet()) {
+                    String operation = store.getKey() + "." + workload.getKey();
+                    double nanos = time(workload.getValue(), seed);
+                    nanosPerOperation.computeIfAbsent(operation, name -> new double[SIZES.length])[s] = nanos;
+                    if (s == SIZES.length - 1) {
+                        bytesPerOperation.put(operation, allocation(workload.getValue(), seed));
+                    }
+                }
+            }
+        }
+        for (String operation : nanosPerOperation.keySet()) {
+            StringBuilder line = new StringBuilder(operation).append(':');
+            for (int s = 0; s < SIZES.length; s++) {
+                line.append(String.format(" n=%d %.0fns", SIZES[s], nanosPerOperation.get(operation)[s]));
+            }
+            System.out.printf("%s; exponent=%.2f; %.0f bytes/op%n", line, exponent(operation), bytesPerOperation.get(operation));
+        }
+    }
+
+    static Stream<Arguments> storesAndOperations() {
+        return STORES.keySet().stream().flatMap(store -> Stream.of(MEASURED).map(operation -> Arguments.of(store, operation)));
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("storesAndOperations")
+    void latencyDoesNotGrowWithDataSize(String store, String operation) {
+        double maxExponent = Double.parseDouble(budget(store, operation, "max-exponent"));
+        assertThat(exponent(store + "." + operation)).as("latency scaling exponent of %s with the %s store", operation, store)
+                .isLessThanOrEqualTo(maxExponent);
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("storesAndOperations")
+    void allocationStaysWithinBudget(String store, String operation) {
+        assumeTrue(threads().isThreadAllocatedMemorySupported(), "allocation measurement not supported");
+        double maxBytes = Double.parseDouble(budget(store, operation, "max-bytes"));
+        assertThat(bytesPerOperation.get(store + "." + operation)).as("bytes allocated per %s with the %s store", operation, store)
+                .isLessThanOrEqualTo(maxBytes);
+    }
+
+    // the most specific of <store>.<operation>.<name>, <operation>.<name> and default.<name>
+    private static String budget(String store, String operation, String name) {
+        String value = budgets.getProperty(store + "." + operation + "." + name,
+                budgets.getProperty(operation + "." + name, budgets.getProperty("default." + name)));
+        assertThat(value).as("budget %s.%s.%s", store, operation, name).isNotNull();
+        return value;
+    }
+
+    // the fastest of several rounds, which is the least disturbed by GC and other processes
+    private static double time(Workload workload, Seed seed) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(workload, seed);
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int operations = run(workload, seed);
+            best = Math.min(best, (double) (System.nanoTime() - start) / operations);
+        }
+        return best;
+    }
+
+    private static double allocation(Workload workload, Seed seed) {
+        com.sun.management.ThreadMXBean threads = threads();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return Double.NaN;
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int operations = run(workload, seed);
+        return (double) (threads.getCurrentThreadAllocatedBytes() - before) / operations;
+    }
+
+    // stops early once a round takes too long, so that a regressed operation fails quickly instead of stalling the suite
+    private static int run(Workload workload, Seed seed) {
+        long deadline = System.nanoTime() + ROUND_NANOS;
+        long result = 0;
+        int i = 0;
+        while (i < OPERATIONS && ((i & 63) != 0 || System.nanoTime() < deadline)) {
+            result += workload.run(seed.sample[i++]);
+        }
+        sink += result;
+        return i;
+    }
+
+    // least-squares slope of log(latency) over log(size)
+    private static double exponent(String operation) {
+        double[] nanos = nanosPerOperation.get(operation);
+        double meanX = 0;
+        double meanY = 0;
+        for (int s = 0; s < SIZES.length; s++) {
+            meanX += Math.log(SIZES[s]) / SIZES.length;
+            meanY += Math.log(nanos[s]) / SIZES.length;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int s = 0; s < SIZES.length; s++) {
+            double dx = Math.log(SIZES[s]) - meanX;
+            covariance += dx * (Math.log(nanos[s]) - meanY);
+            variance += dx * dx;
+        }
+        return covariance / variance;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    @FunctionalInterface
+    private interface Workload {
+        long run(int index);
+    }
+
+    private static final class Seed {
+        private final UserService users;
+        private final RefreshTokenService tokens;
+        private final UUID[] ids;
+        private final String[] emails;
+        private final String[] names;
+        private final String[] refreshTokens;
+        private final int[] sample = new int[OPERATIONS];
+
+        Seed(int size, UserStore store) {
+            ReplicationLog replicationLog = new ReplicationLog(false);
+            // seeding goes through UserService, which would otherwise spend all its time in BCrypt
+            this.users = new UserService(new PlainPasswordEncoder(), store, replicationLog);
+            this.tokens = new RefreshTokenService(replicationLog);
+            this.ids = new UUID[size];
+            this.emails = new String[size];
+            this.names = new String[size];
+            this.refreshTokens = new String[size];
+            Random random = new Random(size);
+            for (int i = 0; i < size; i++) {
+                this.names[i] = "user" + i;
+                this.emails[i] = "user" + i + "@example.com";
+                UserDTO user = this.users.createUser(new CreateUserRequest(this.names[i], this.emails[i], "password", 18 + random.nextInt(60)));
+                this.ids[i] = user.id();
+                this.refreshTokens[i] = this.tokens.create(user.id(), false);
+            }
+            for (int i = 0; i < OPERATIONS; i++) {
+                this.sample[i] = random.nextInt(size);
+            }
+        }
+
+        Map<String, Workload> workloads() {
+            Map<String, Workload> workloads = new LinkedHashMap<>();
+            workloads.put("findByEmail", i -> this.users.findByEmail(this.emails[i]).age());
+            workloads.put("getUserById", i -> this.users.getUserById(this.ids[i]).age());
+            workloads.put("searchUsers", i -> this.users.searchUsers(this.names[i], null, null, 10).size());
+            workloads.put("verifyAndGetUserId", i -> this.tokens.verifyAndGetUserId(this.refreshTokens[i]).getLeastSignificantBits());
+            workloads.put("createRefreshToken", i -> {
+                this.refreshTokens[i] = this.tokens.create(this.ids[i], false);
+                return this.refreshTokens[i].length();
+            });
+            return workloads;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks {@link PersistentHashMap}, including keys whose hashes collide fully or share long prefixes.
+ */
+class PersistentHashMapTests {
+
+    @Test
+    void withGetSizeAndValues() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().with("a", 1).with("b", 2).with("c", 3);
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get("a")).isEqualTo(1);
+        assertThat(map.get("c")).isEqualTo(3);
+        assertThat(map.get("d")).isNull();
+        assertThat(map.values()).containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(PersistentHashMap.empty().get("a")).isNull();
+        assertThat(PersistentHashMap.empty().values()).isEmpty();
+    }
+
+    @Test
+    void withReplacesWithoutChangingSize() {
+        Integer one = 1;
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().with("a", one);
+        assertThat(map.with("a", one)).isSameAs(map);
+        PersistentHashMap<String, Integer> replaced = map.with("a", 2);
+        assertThat(replaced.get("a")).isEqualTo(2);
+        assertThat(replaced.size()).isEqualTo(1);
+    }
+
+    @Test
+    void withoutRemovesOnlyTheGivenKey() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().with("a", 1).with("b", 2);
+        PersistentHashMap<String, Integer> removed = map.without("a");
+        assertThat(removed.get("a")).isNull();
+        assertThat(removed.get("b")).isEqualTo(2);
+        assertThat(removed.size()).isEqualTo(1);
+        assertThat(removed.without("missing")).isSameAs(removed);
+        assertThat(removed.without("b")).isSameAs(PersistentHashMap.empty());
+    }
+
+    @Test
+    void updatesLeaveEarlierVersionsUnchanged() {
+        PersistentHashMap<String, Integer> before = PersistentHashMap.<String, Integer>empty().with("a", 1).with("b", 2);
+        PersistentHashMap<String, Integer> after = before.with("a", 10).with("c", 3).without("b");
+        assertThat(before.get("a")).isEqualTo(1);
+        assertThat(before.get("b")).isEqualTo(2);
+        assertThat(before.get("c")).isNull();
+        assertThat(before.values()).containsExactlyInAnyOrder(1, 2);
+        assertThat(after.values()).containsExactlyInAnyOrder(10, 3);
+    }
+
+    @Test
+    void collidingKeysShareACollisionNode() {
+        Key first = new Key(7, "first");
+        Key second = new Key(7, "second");
+        Key third = new Key(7, "third");
+        PersistentHashMap<Key, String> map = PersistentHashMap.<Key, String>empty()
+                .with(first, "1").with(second, "2").with(third, "3");
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get(second)).isEqualTo("2");
+        assertThat(map.get(new Key(7, "fourth"))).isNull();
+        assertThat(map.values()).containsExactlyInAnyOrder("1", "2", "3");
+
+        PersistentHashMap<Key, String> replaced = map.with(second, "two");
+        assertThat(replaced.get(second)).isEqualTo("two");
+        assertThat(replaced.size()).isEqualTo(3);
+
+        PersistentHashMap<Key, String> removed = map.without(second);
+        assertThat(removed.get(second)).isNull();
+        assertThat(removed.get(first)).isEqualTo("1");
+        assertThat(removed.get(third)).isEqualTo("3");
+        assertThat(removed.size()).isEqualTo(2);
+        assertThat(removed.without(first).without(third)).isSameAs(PersistentHashMap.empty());
+    }
+
+    @Test
+    void keysWithADifferentHashSplitACollisionNode() {
+        Key first = new Key(7, "first");
+        Key second = new Key(7, "second");
+        // same lowest 5 bits as the colliding pair, so it lands in the same top-level branch
+        Key other = new Key(7 | 1 << 10, "other");
+        PersistentHashMap<Key, String> map = PersistentHashMap.<Key, String>empty()
+                .with(first, "1").with(second, "2").with(other, "3");
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get(first)).isEqualTo("1");
+        assertThat(map.get(second)).isEqualTo("2");
+        assertThat(map.get(other)).isEqualTo("3");
+        assertThat(map.without(first).without(second).get(other)).isEqualTo("3");
+    }
+
+    @Test
+    void removeCollapsesBranchesAndKeepsRemainingKeys() {
+        // these hashes only differ in their high bits, so the two keys share a branch several levels deep
+        Key deep = new Key(3, "deep");
+        Key deeper = new Key(3 | 1 << 30, "deeper");
+        Key shallow = new Key(4, "shallow");
+        PersistentHashMap<Key, String> map = PersistentHashMap.<Key, String>empty()
+                .with(deep, "1").with(deeper, "2").with(shallow, "3");
+
+        PersistentHashMap<Key, String> collapsed = map.without(deeper);
+        assertThat(collapsed.size()).isEqualTo(2);
+        assertThat(collapsed.get(deep)).isEqualTo("1");
+        assertThat(collapsed.get(deeper)).isNull();
+        assertThat(collapsed.values()).containsExactlyInAnyOrder("1", "3");
+
+        PersistentHashMap<Key, String> regrown = collapsed.with(deeper, "4");
+        assertThat(regrown.get(deep)).isEqualTo("1");
+        assertThat(regrown.get(deeper)).isEqualTo("4");
+        assertThat(collapsed.without(deep).without(shallow)).isSameAs(PersistentHashMap.empty());
+    }
+
+    @Test
+    void matchesHashMapUnderRandomUpdates() {
+        Random random = new Random(42);
+        Map<Key, Integer> expected = new HashMap<>();
+        List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            // few distinct hashes, so that collisions and deep branches are common
+            keys.add(new Key(random.nextInt(256) << random.nextInt(24), "key" + i));
+        }
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        for (int step = 0; step < 50_000; step++) {
+            Key key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                expected.put(key, step);
+                map = map.with(key, step);
+            }
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        for (Key key : keys) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+        assertThat(map.values()).containsExactlyInAnyOrderElementsOf(expected.values());
+    }
+
+    private record Key(int hash, String name) {
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
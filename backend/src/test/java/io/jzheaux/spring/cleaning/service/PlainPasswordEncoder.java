@@ -0,0 +1,19 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Password encoder for tests that stores passwords as they are, so that creating users is cheap.
+ */
+public final class PlainPasswordEncoder implements PasswordEncoder {
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return rawPassword.toString();
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return rawPassword.toString().equals(encodedPassword);
+    }
+}
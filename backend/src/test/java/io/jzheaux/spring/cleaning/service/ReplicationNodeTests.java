@@ -0,0 +1,191 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jsonwebtoken.Claims;
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs replicating nodes in this JVM and checks the handshake, the replication of access-token
+ * revocations, the pruning of tombstones, and the limit on connections.
+ */
+class ReplicationNodeTests {
+
+    private static final String SECRET = "test-only-replication-secret-of-32-bytes";
+    private static final Duration CONVERGENCE = Duration.ofSeconds(10);
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    void closeNodes() throws IOException {
+        for (Node node : this.nodes) {
+            node.replication.close();
+        }
+    }
+
+    @Test
+    void replicatesUsersAndAccessTokenRevocations() throws Exception {
+        int[] ports = { freePort(), freePort() };
+        Node a = start(SECRET, ports[0], ports[1]);
+        Node b = start(SECRET, ports[1], ports[0]);
+
+        UserDTO user = a.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+        await(() -> b.users.getAllUsers().contains(user));
+
+        String token = b.jwt.generateToken(user);
+        Claims claims = b.jwt.extractAllClaims(token);
+        a.jwt.revoke(token);
+        await(() -> b.jwt.isRevoked(claims));
+    }
+
+    @Test
+    void dropsTombstonesOnceEveryPeerHasAppliedThem() throws Exception {
+        int[] ports = { freePort(), freePort() };
+        Node a = start(SECRET, ports[0], ports[1]);
+        Node b = start(SECRET, ports[1], ports[0]);
+
+        UserDTO user = a.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+        await(() -> b.users.getAllUsers().contains(user));
+        assertThat(a.users.deleteUserById(user.id())).isTrue();
+        await(() -> b.users.getAllUsers().isEmpty());
+
+        await(() -> a.log.size() == 0 && b.log.size() == 0);
+    }
+
+    @Test
+    void ignoresEchoesOfPrunedTombstones() throws Exception {
+        ReplicationLog log = new ReplicationLog(true);
+        UUID userId = UUID.randomUUID();
+        log.userDeleted(userId);
+        ReplicationEntry tombstone = log.read(0, 1, 0).firstEntry().getValue();
+        log.prune(1, Instant.now());
+        assertThat(log.size()).isZero();
+
+        assertThat(log.isNewer(tombstone)).isFalse();
+        assertThat(log.isNewer(new ReplicationEntry(ReplicationEntry.Type.USER_SAVED, userId,
+                tombstone.timestamp() + 1, UUID.randomUUID(), null, null, null))).isTrue();
+    }
+
+    @Test
+    void ignoresRevocationsOfExpiredTokens() {
+        ReplicationLog log = new ReplicationLog(true);
+        ReplicationEntry.RevokedAccessToken expired = new ReplicationEntry.RevokedAccessToken("jti", Instant.now().minusSeconds(1));
+        assertThat(log.isNewer(new ReplicationEntry(ReplicationEntry.Type.ACCESS_TOKEN_REVOKED,
+                ReplicationEntry.revocationKey("jti"), 1, UUID.randomUUID(), null, null, expired))).isFalse();
+    }
+
+    @Test
+    void closesConnectionsBeyondOnePerPeerPlusSpares() throws Exception {
+        Node a = start(SECRET, freePort(), freePort());
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            // one configured peer and two spares are served, and wait for a handshake that never comes
+            for (int i = 0; i < 3; i++) {
+                sockets.add(new Socket("localhost", a.replication.getPort()));
+            }
+            Thread.sleep(200);
+            try (Socket refused = new Socket("localhost", a.replication.getPort())) {
+                refused.setSoTimeout(1000);
+                assertThat(refused.getInputStream().read()).isEqualTo(-1);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    void peersWithAnotherSecretReceiveNothing() throws Exception {
+        int[] ports = { freePort(), freePort() };
+        Node a = start(SECRET, ports[0]);
+        Node intruder = start("another-replication-secret-of-32-bytes", ports[1], ports[0]);
+        a.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+
+        // the intruder's pulls are refused, so nothing arrives even after several reconnects
+        Thread.sleep(TimeUnit.SECONDS.toMillis(3));
+        assertThat(intruder.users.getAllUsers()).isEmpty();
+    }
+
+    @Test
+    void peerThatFailsTheHandshakeIsDisconnectedBeforeAnyEntry() throws Exception {
+        Node a = start(SECRET, freePort());
+        a.users.createUser(new CreateUserRequest("Ada", "ada@example.com", "password", 36));
+
+        try (Socket socket = new Socket("localhost", a.replication.getPort())) {
+            socket.setSoTimeout((int) CONVERGENCE.toMillis());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeInt(0x52504C32);
+            out.writeLong(0);
+            out.writeLong(1);
+            out.write(new byte[32]);
+            out.flush();
+            in.readFully(new byte[16 + 32 + 32]);
+
+            out.write(new byte[32]);
+            out.writeLong(0);
+            out.flush();
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void refusesToStartWithoutASecret() {
+        assertThatThrownBy(() -> start("", freePort())).isInstanceOf(IllegalStateException.class);
+    }
+
+    private Node start(String secret, int port, int... peers) throws IOException {
+        List<String> addresses = new ArrayList<>();
+        for (int peer : peers) {
+            addresses.add("localhost:" + peer);
+        }
+        Node node = new Node(secret, port, addresses);
+        this.nodes.add(node);
+        return node;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + CONVERGENCE.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("converged").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final class Node {
+        private final ReplicationLog log = new ReplicationLog(true);
+        private final UserService users = new UserService(new PlainPasswordEncoder(), new MapUserStore(), this.log);
+        private final JwtUtil jwt = new JwtUtil("test-only-signing-key-of-at-least-32-bytes",
+                new AccessTokenDenylist(Duration.ofMinutes(1), Duration.ofMinutes(15)), this.log);
+        private final ReplicationNode replication;
+
+        Node(String secret, int port, List<String> peers) throws IOException {
+            this.replication = new ReplicationNode(this.log, this.users, new RefreshTokenService(this.log), this.jwt,
+                    secret, "127.0.0.1", port, peers);
+        }
+    }
+}
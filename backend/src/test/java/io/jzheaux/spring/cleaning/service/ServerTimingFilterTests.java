@@ -0,0 +1,87 @@
+package io.jzheaux.spring.cleaning.service;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks when {@link ServerTimingFilter} adds the {@code Server-Timing} header.
+ */
+class ServerTimingFilterTests {
+
+    private final ServerTimingFilter filter = new ServerTimingFilter(true);
+
+    @Test
+    void bufferedResponsesGetTheHeaderWithTheWritePhase() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.filter.doFilter(request, response, write(16));
+
+        String header = response.getHeader(ServerTiming.HEADER);
+        assertThat(header).contains("write;dur=").contains("total;dur=");
+        assertThat(response.getHeader(HttpHeaders.TRAILER)).isNull();
+        assertThat(request.getAttribute(ServerTimingFilter.ACCESS_LOG_ATTRIBUTE)).isSameAs(header);
+    }
+
+    @Test
+    void responsesLargerThanTheBufferGetTheHeaderBeforeTheyAreCommitted() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setBufferSize(1024);
+        this.filter.doFilter(request, response, write(4096));
+
+        assertThat(response.isCommitted()).isTrue();
+        assertThat(response.getHeader(ServerTiming.HEADER)).contains("total;dur=");
+        assertThat(response.getHeader(HttpHeaders.TRAILER)).isEqualTo(ServerTiming.HEADER);
+        assertThat(request.getAttribute(ServerTimingFilter.ACCESS_LOG_ATTRIBUTE)).asString().contains("write;dur=");
+    }
+
+    @Test
+    void bodiesWrittenThroughTheWriterAreTimedAndCounted() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.filter.doFilter(request, response, print("{}"));
+
+        assertThat(response.getHeader(ServerTiming.HEADER)).contains("write;dur=");
+        assertThat(response.getContentAsString()).isEqualTo("{}");
+
+        MockHttpServletResponse large = new MockHttpServletResponse();
+        large.setBufferSize(1024);
+        this.filter.doFilter(new MockHttpServletRequest("GET", "/api/users"), large, print("x".repeat(16384)));
+
+        assertThat(large.getHeader(HttpHeaders.TRAILER)).isEqualTo(ServerTiming.HEADER);
+        assertThat(large.getContentAsString()).hasSize(16384);
+    }
+
+    @Test
+    void eachRequestGetsItsOwnTimings() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            this.filter.doFilter(request, response, write(16));
+            assertThat(response.getHeader(ServerTiming.HEADER)).isNotNull();
+            assertThat(response.getContentAsByteArray()).hasSize(16);
+        }
+    }
+
+    // writes the body inside the write phase, as the response body advice does
+    private static FilterChain write(int bytes) {
+        return (request, response) -> {
+            ServerTiming.enter(ServerTiming.Phase.WRITE);
+            response.getOutputStream().write(new byte[bytes]);
+            response.getOutputStream().flush();
+        };
+    }
+
+    // prints the body without flushing the writer, as error pages and view templates may
+    private static FilterChain print(String body) {
+        return (request, response) -> {
+            ServerTiming.enter(ServerTiming.Phase.WRITE);
+            response.getWriter().print(body);
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package io.jzheaux.spring.cleaning.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link SingleFlight} shares one computation, and its outcome, among concurrent callers.
+ */
+class SingleFlightTests {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, Object> flights = new SingleFlight<>();
+    private final AtomicInteger computations = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void concurrentCallersShareOneResult() throws Exception {
+        Object result = new Object();
+        List<Future<Object>> outcomes = callConcurrently(() -> this.flights.execute("key", () -> {
+            this.computations.incrementAndGet();
+            this.started.countDown();
+            await(this.release);
+            return result;
+        }));
+        for (Future<Object> outcome : outcomes) {
+            assertThat(outcome.get(5, TimeUnit.SECONDS)).isSameAs(result);
+        }
+        assertThat(this.computations.get()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentCallersShareOneException() throws Exception {
+        IllegalStateException failure = new IllegalStateException("failed");
+        List<Future<Object>> outcomes = callConcurrently(() -> this.flights.execute("key", () -> {
+            this.computations.incrementAndGet();
+            this.started.countDown();
+            await(this.release);
+            throw failure;
+        }));
+        for (Future<Object> outcome : outcomes) {
+            assertThatThrownBy(() -> outcome.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCause(failure);
+        }
+        assertThat(this.computations.get()).isEqualTo(1);
+    }
+
+    @Test
+    void nothingIsCachedOnceTheComputationFinishes() {
+        assertThat(this.flights.execute("key", () -> this.computations.incrementAndGet())).isEqualTo(1);
+        assertThat(this.flights.execute("key", () -> this.computations.incrementAndGet())).isEqualTo(2);
+        assertThatThrownBy(() -> this.flights.execute("key", () -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(this.flights.execute("key", () -> this.computations.incrementAndGet())).isEqualTo(3);
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+        assertThat(this.flights.execute("one", () -> this.flights.execute("two", () -> "nested"))).isEqualTo("nested");
+    }
+
+    // starts one caller, waits until its computation is running, then starts the rest and waits until
+    // they are all blocked on it before letting it finish
+    private List<Future<Object>> callConcurrently(Callable<Object> call) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Object>> outcomes = new ArrayList<>();
+            List<Thread> waiting = new ArrayList<>();
+            outcomes.add(executor.submit(call));
+            assertThat(this.started.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 1; i < CALLERS; i++) {
+                outcomes.add(executor.submit(() -> {
+                    synchronized (waiting) {
+                        waiting.add(Thread.currentThread());
+                    }
+                    return call.call();
+                }));
+            }
+            awaitBlocked(waiting);
+            this.release.countDown();
+            return outcomes;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitBlocked(List<Thread> threads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            synchronized (threads) {
+                if (threads.size() == CALLERS - 1 && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                    return;
+                }
+            }
+            assertThat(System.nanoTime()).as("callers blocked").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
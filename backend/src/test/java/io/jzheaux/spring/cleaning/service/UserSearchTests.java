@@ -0,0 +1,81 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.CreateUserRequest;
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import io.jzheaux.spring.cleaning.exceptions.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks {@link UserService#searchUsers} and the {@link UserSearchIndex} behind it.
+ */
+class UserSearchTests {
+
+    private UserService users;
+
+    @BeforeEach
+    void seed() {
+        this.users = new UserService(new PlainPasswordEncoder(), new MapUserStore(), new ReplicationLog(false));
+        create("Alice", 30);
+        create("alfred", 90);
+        create("Albert", 45);
+        create("Bob", 30);
+        create("Beatrice", 91);
+        create("Carol", 17);
+    }
+
+    @Test
+    void prefixMatchesCaseInsensitivelyInNameOrder() {
+        assertThat(names(this.users.searchUsers("AL", null, null, 50))).containsExactly("Albert", "alfred", "Alice");
+    }
+
+    @Test
+    void ageRangeMatchesInAgeOrder() {
+        assertThat(names(this.users.searchUsers(null, 30, 45, 50))).containsExactlyInAnyOrder("Alice", "Bob", "Albert");
+        assertThat(names(this.users.searchUsers(null, null, 20, 50))).containsExactly("Carol");
+        assertThat(names(this.users.searchUsers(null, 90, null, 50))).containsExactly("alfred", "Beatrice");
+    }
+
+    @Test
+    void prefixAndAgeRangeAreBothApplied() {
+        assertThat(names(this.users.searchUsers("al", 40, null, 50))).containsExactly("Albert", "alfred");
+        assertThat(names(this.users.searchUsers("al", 90, 90, 50))).containsExactly("alfred");
+        assertThat(names(this.users.searchUsers("b", null, 35, 50))).containsExactly("Bob");
+        assertThat(this.users.searchUsers("c", 18, null, 50)).isEmpty();
+    }
+
+    @Test
+    void limitCapsTheResults() {
+        assertThat(names(this.users.searchUsers("a", null, null, 2))).containsExactly("Albert", "alfred");
+        assertThat(this.users.searchUsers(null, null, null, 4)).hasSize(4);
+        assertThatThrownBy(() -> this.users.searchUsers(null, null, null, 0)).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> this.users.searchUsers(null, null, null, UserService.MAX_SEARCH_LIMIT + 1))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> this.users.searchUsers(null, 50, 40, 10)).isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void deletedUsersLeaveTheIndexes() {
+        UserDTO alice = this.users.findByEmail("alice@example.com");
+        this.users.deleteUserById(alice.id());
+        assertThat(names(this.users.searchUsers("ali", null, null, 50))).isEmpty();
+        assertThat(names(this.users.searchUsers(null, 30, 30, 50))).containsExactly("Bob");
+        assertThat(names(this.users.searchUsers("a", 30, 30, 50))).isEmpty();
+
+        create("Alice", 30);
+        assertThat(names(this.users.searchUsers("ali", 30, 30, 50))).containsExactly("Alice");
+    }
+
+    private void create(String name, int age) {
+        this.users.createUser(new CreateUserRequest(name, name.toLowerCase() + "@example.com", "password", age));
+    }
+
+    private static List<String> names(List<UserDTO> users) {
+        return users.stream().map(UserDTO::name).toList();
+    }
+}
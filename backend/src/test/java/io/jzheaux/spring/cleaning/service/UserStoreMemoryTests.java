@@ -0,0 +1,56 @@
+package io.jzheaux.spring.cleaning.service;
+
+import io.jzheaux.spring.cleaning.dto.UserDTO;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reports the retained heap per user of each {@link UserStore}. Run with {@code ./gradlew performanceTest}.
+ */
+@Tag("performance")
+class UserStoreMemoryTests {
+
+    private static final int USERS = 500_000;
+
+    @Test
+    void compactStoreRetainsLessHeapPerUserThanMapStore() {
+        long map = bytesPerUser(MapUserStore::new);
+        long compact = bytesPerUser(CompactUserStore::new);
+        System.out.printf("bytes per user: map=%d compact=%d%n", map, compact);
+        assertThat(compact).isLessThan(map * 3 / 5);
+    }
+
+    private static long bytesPerUser(Supplier<UserStore> stores) {
+        long before = usedHeap();
+        UserStore store = stores.get();
+        for (int i = 0; i < USERS; i++) {
+            store.save(user(i));
+        }
+        long after = usedHeap();
+        assertThat(store.size()).isEqualTo(USERS);
+        return (after - before) / USERS;
+    }
+
+    private static UserDTO user(int i) {
+        String hash = "$2a$10$abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRS" + (1_000_000 + i);
+        return new UserDTO(UUID.randomUUID(), "User " + i, hash, "user" + i + "@example.com", i % 100);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}